@@ -0,0 +1,45 @@
+package com.example.api.config;
+
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.repository.MailEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.CacheManager;
+
+@Configuration
+public class EntityCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(Environment environment) {
+        return ReferenceDataCache.createCacheManager(environment);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheSettings(CacheManager entityCacheManager) {
+        return properties -> ReferenceDataCache.configure(properties, entityCacheManager);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReferenceDataCache referenceDataCache(EntityManagerFactory entityManagerFactory,
+            MailEventRepository mailEventRepository,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${entity.cache.poll.ms:1000}") long pollIntervalMs,
+            @Value("${replica.urls:}") String replicaUrls,
+            @Value("${replica.max.lag.ms:1000}") long replicaMaxLagMs,
+            @Value("${replica.lag.check.ms:1000}") long replicaCheckMs,
+            @Value("${events.lookback.ms:60000}") long lookbackMs) {
+        // Read-write, so that with read replicas polls go to the primary; a replica in use
+        // has caught up with a change by the time its lag allowance and one check have passed
+        long settleMs = replicaUrls.isBlank() ? 0 : replicaMaxLagMs + replicaCheckMs;
+        return new ReferenceDataCache(entityManagerFactory, mailEventRepository,
+                new TransactionTemplate(transactionManager), pollIntervalMs, settleMs, lookbackMs, meterRegistry);
+    }
+}
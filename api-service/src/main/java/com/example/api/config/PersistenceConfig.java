@@ -0,0 +1,70 @@
+package com.example.api.config;
+
+import com.example.common.codec.CompressionDictionaries;
+import com.example.common.codec.PayloadCodec;
+import com.example.common.persistence.BatchPersister;
+import com.example.common.repository.CompressionDictionaryRepository;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.RawMessageRepository;
+import com.example.common.retention.MailboxPurger;
+import com.example.common.store.DatabaseMessageStore;
+import com.example.common.store.MessageStore;
+import com.example.common.store.SegmentLogMessageStore;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+
+@Configuration
+public class PersistenceConfig {
+
+    @Bean
+    public BatchPersister batchPersister(EntityManager entityManager,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        return new BatchPersister(entityManager, batchSize);
+    }
+
+    @Bean
+    public PayloadCodec payloadCodec(@Value("${codec.zstd.level:3}") int level) {
+        return new PayloadCodec(level);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public CompressionDictionaries compressionDictionaries(PayloadCodec payloadCodec,
+            CompressionDictionaryRepository repository,
+            @Value("${codec.dictionary.refresh.seconds:60}") long refreshSeconds) {
+        return new CompressionDictionaries(payloadCodec, repository, refreshSeconds);
+    }
+
+    /** Reads raw messages; the SMTP service writes and compacts a segment log, this service only reads it. */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public MessageStore messageStore(BatchPersister batchPersister, RawMessageRepository rawMessageRepository,
+            @Value("${message.store:database}") String type,
+            @Value("${message.store.directory:data/messages}") String directory,
+            @Value("${message.store.refresh.seconds:10}") long refreshSeconds) {
+        MessageStore database = new DatabaseMessageStore(batchPersister, rawMessageRepository);
+        switch (type) {
+            case "database":
+                return database;
+            case "segment":
+                return new SegmentLogMessageStore(Path.of(directory), database, refreshSeconds);
+            default:
+                throw new IllegalArgumentException("Unknown message.store: " + type);
+        }
+    }
+
+    /** Empties folders being deleted; chunked, but without pauses, as a client is waiting. */
+    @Bean
+    public MailboxPurger mailboxPurger(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            TransactionTemplate transactionTemplate, FolderCounterRepository folderCounterRepository,
+            MailEventRepository mailEventRepository,
+            @Value("${folder.purge.chunk.size:1000}") int chunkSize) {
+        return new MailboxPurger(namedParameterJdbcTemplate, transactionTemplate, folderCounterRepository,
+                mailEventRepository, chunkSize, 0);
+    }
+}
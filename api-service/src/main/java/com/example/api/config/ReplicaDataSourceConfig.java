@@ -0,0 +1,68 @@
+package com.example.api.config;
+
+import com.example.api.persistence.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured data source when {@code replica.urls} is set:
+ * the primary pool is configured from {@code spring.datasource.*} as before,
+ * and read-only transactions are routed to the replicas (see
+ * {@link ReplicaRoutingDataSource}). Replica pools copy the primary's pool
+ * settings and are named {@code replica-1}, {@code replica-2} and so on.
+ */
+@Configuration
+@ConditionalOnProperty("replica.urls")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+            MeterRegistry meterRegistry,
+            @Value("${replica.urls}") List<String> urls,
+            @Value("${replica.username:${spring.datasource.username:}}") String username,
+            @Value("${replica.password:${spring.datasource.password:}}") String password,
+            @Value("${replica.lag.query:" + ReplicaRoutingDataSource.POSTGRES_LAG_QUERY + "}") String lagQuery,
+            @Value("${replica.max.lag.ms:1000}") long maxLagMs,
+            @Value("${replica.lag.check.ms:1000}") long checkIntervalMs,
+            @Value("${replica.sticky.ms:5000}") long stickyMs) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setPoolName("replica-" + (replicas.size() + 1));
+            config.setJdbcUrl(url.trim());
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setReadOnly(true);
+            replicas.put(config.getPoolName(), new HikariDataSource(config));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, lagQuery, maxLagMs, checkIntervalMs,
+                stickyMs, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.api.config;
+
+import com.example.common.cache.SettingsCache;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.SettingsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Configuration
+public class SettingsCacheConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public SettingsCache settingsCache(SettingsRepository settingsRepository,
+            MailEventRepository mailEventRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${settings.cache.size:10000}") int size,
+            @Value("${settings.cache.ttl.seconds:300}") long ttlSeconds,
+            @Value("${settings.cache.poll.ms:1000}") long pollIntervalMs,
+            @Value("${events.lookback.ms:60000}") long lookbackMs) {
+        // Read-write, so that with read replicas polls and loads go to the primary
+        return new SettingsCache(settingsRepository, mailEventRepository,
+                new TransactionTemplate(transactionManager), size, ttlSeconds, pollIntervalMs, lookbackMs);
+    }
+}
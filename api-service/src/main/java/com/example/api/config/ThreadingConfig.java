@@ -0,0 +1,43 @@
+package com.example.api.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Reports how requests are executed.
+ *
+ * With {@code spring.threads.virtual.enabled} Spring Boot runs Tomcat request
+ * handling and the application task executor (used for streamed MVC responses)
+ * on virtual threads. Database concurrency is then bounded by the Hikari pool
+ * alone, so requests waiting on a slow database no longer hold up endpoints
+ * that do not need a connection. Boot ignores the setting below Java 21.
+ */
+@Configuration
+@Slf4j
+public class ThreadingConfig {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int poolSize;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int maxThreads;
+
+    @PostConstruct
+    void report() {
+        boolean supported = JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE);
+        if (virtualThreads && !supported) {
+            log.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads; "
+                    + "using {} platform request threads", JavaVersion.getJavaVersion(), maxThreads);
+        } else if (virtualThreads) {
+            log.info("Handling requests on virtual threads; database concurrency bounded by a pool of {}", poolSize);
+        } else {
+            log.info("Handling requests on up to {} platform threads; database pool of {}", maxThreads, poolSize);
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package com.example.api.controller;
 
+import com.example.api.dto.AdminStats;
+import com.example.api.dto.CursorPage;
+import com.example.api.service.AdminStatsService;
+import com.example.api.service.UserService;
+import com.example.common.dto.UserSummary;
 import com.example.common.entity.User;
 import com.example.common.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -27,8 +36,13 @@ import java.util.Map;
 @SecurityRequirement(name = "BearerAuth")
 public class AdminController {
 
+    private static final int MAX_USER_PAGE_SIZE = 1000;
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final UserService userService;
+    private final AdminStatsService adminStatsService;
+    private final ObjectMapper objectMapper;
 
     @Operation(summary = "List all users", description = "Retrieves a list of all registered users (Admin only)")
     @ApiResponse(responseCode = "200", description = "List of users", content = @Content(mediaType = "application/json", schema = @Schema(implementation = List.class)))
@@ -37,13 +51,72 @@ public class AdminController {
         return ResponseEntity.ok(userRepository.findAll());
     }
 
+    @Operation(summary = "List users by cursor", description = "Keyset-paginated user listing in id order, without password hashes "
+            + "(Admin only). Pass the returned nextCursor to get the following page; it is absent on the last page. "
+            + "Optionally filter by domain and by role.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One page of users", content = @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping("/users/page")
+    public ResponseEntity<CursorPage<UserSummary>> getUsersPage(
+            @Parameter(description = "nextCursor from the previous page; omit for the first page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size (1-" + MAX_USER_PAGE_SIZE + ")") @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @Parameter(description = "Only users of this domain: those assigned to it, and those without a domain whose username ends in @domain") @RequestParam(value = "domain", required = false) String domain,
+            @Parameter(description = "Only users with this role, e.g. ADMIN") @RequestParam(value = "role", required = false) String role) {
+        long after;
+        try {
+            after = cursor != null ? Long.parseLong(cursor) : 0;
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_USER_PAGE_SIZE));
+        // One extra row tells whether another page follows
+        List<UserSummary> users = userRepository.findSummariesAfter(after, domainName(domain),
+                usernamePattern(domain), rolesPattern(role), PageRequest.of(0, size + 1));
+        String nextCursor = null;
+        if (users.size() > size) {
+            users = users.subList(0, size);
+            nextCursor = String.valueOf(users.get(size - 1).getId());
+        }
+        return ResponseEntity.ok(new CursorPage<>(users, nextCursor, null));
+    }
+
+    @Operation(summary = "Stream users", description = "Writes every matching user as one NDJSON line, in id order and without "
+            + "password hashes (Admin only). Users are read a page at a time, so memory use does not grow with the "
+            + "number of accounts.")
+    @ApiResponse(responseCode = "200", description = "One user per line", content = @Content(mediaType = "application/x-ndjson"))
+    @GetMapping(value = "/users/stream", produces = "application/x-ndjson")
+    public void streamUsers(
+            @Parameter(description = "Only users of this domain: those assigned to it, and those without a domain whose username ends in @domain") @RequestParam(value = "domain", required = false) String domain,
+            @Parameter(description = "Only users with this role, e.g. ADMIN") @RequestParam(value = "role", required = false) String role,
+            HttpServletResponse response) throws IOException {
+        String domainName = domainName(domain);
+        String usernamePattern = usernamePattern(domain);
+        String rolesPattern = rolesPattern(role);
+        response.setContentType("application/x-ndjson");
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            long after = 0;
+            List<UserSummary> users;
+            do {
+                users = userRepository.findSummariesAfter(after, domainName, usernamePattern, rolesPattern,
+                        PageRequest.of(0, STREAM_PAGE_SIZE));
+                writer.writeAll(users);
+                writer.flush();
+                if (!users.isEmpty()) {
+                    after = users.get(users.size() - 1).getId();
+                }
+            } while (users.size() == STREAM_PAGE_SIZE);
+        }
+    }
+
     @Operation(summary = "Create a new user", description = "Creates a new user account (Admin only)")
     @ApiResponse(responseCode = "200", description = "User created successfully", content = @Content(mediaType = "application/json", schema = @Schema(implementation = User.class)))
     @PostMapping("/users")
     public ResponseEntity<User> createUser(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "User details", required = true, content = @Content(schema = @Schema(implementation = User.class))) @RequestBody User user) {
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return ResponseEntity.ok(userRepository.save(user));
+        return ResponseEntity.ok(userService.createUser(user));
     }
 
     @Operation(summary = "Update user", description = "Updates user properties like username or roles (Admin only)")
@@ -52,12 +125,7 @@ public class AdminController {
     public ResponseEntity<User> updateUser(
             @Parameter(description = "User ID") @PathVariable("id") Long id,
             @RequestBody User updates) {
-        User user = userRepository.findById(id).orElseThrow();
-        if (updates.getUsername() != null)
-            user.setUsername(updates.getUsername());
-        if (updates.getRoles() != null)
-            user.setRoles(updates.getRoles());
-        return ResponseEntity.ok(userRepository.save(user));
+        return ResponseEntity.ok(userService.updateUser(id, updates));
     }
 
     @Operation(summary = "Delete user", description = "Permanently deletes a user account (Admin only)")
@@ -65,18 +133,40 @@ public class AdminController {
     @DeleteMapping("/users/{id}")
     public ResponseEntity<?> deleteUser(
             @Parameter(description = "User ID") @PathVariable("id") Long id) {
-        userRepository.deleteById(id);
+        userService.deleteUser(id);
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "Get system statistics", description = "Retrieves system statistics and metrics (Admin only)")
-    @ApiResponse(responseCode = "200", description = "System statistics", content = @Content(mediaType = "application/json"))
+    @Operation(summary = "Get system statistics", description = "Retrieves queue depth by status, messages received and sent per minute and hour, "
+            + "storage per user and top sender domains (Admin only). Served from in-memory counters updated every few seconds "
+            + "and reconciled with the database periodically.")
+    @ApiResponse(responseCode = "200", description = "System statistics", content = @Content(mediaType = "application/json", schema = @Schema(implementation = AdminStats.class)))
     @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("users", userRepository.count());
-        // Add more stats as needed
-        return ResponseEntity.ok(stats);
+    public ResponseEntity<AdminStats> getStats() {
+        return ResponseEntity.ok(adminStatsService.getStats());
+    }
+
+    private static String domainName(String domain) {
+        return domain == null || domain.isBlank() ? null : domain.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String usernamePattern(String domain) {
+        return domain == null || domain.isBlank() ? "%" : "%@" + escapeLike(domainName(domain));
+    }
+
+    private static String rolesPattern(String role) {
+        if (role == null || role.isBlank()) {
+            return "%";
+        }
+        String name = role.trim().toUpperCase(Locale.ROOT);
+        if (name.startsWith("ROLE_")) {
+            name = name.substring("ROLE_".length());
+        }
+        return "%," + escapeLike(name) + ",%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     @Operation(summary = "Get domain configuration", description = "Retrieves the current domain configuration (Admin only)")
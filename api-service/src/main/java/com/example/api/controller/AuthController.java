@@ -1,5 +1,6 @@
 package com.example.api.controller;
 
+import com.example.api.security.UserPrincipal;
 import com.example.api.service.UserService;
 import com.example.common.entity.User;
 import io.swagger.v3.oas.annotations.Operation;
@@ -15,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
@@ -55,13 +57,14 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<?> login(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "User login credentials", required = true, content = @Content(schema = @Schema(implementation = com.example.api.dto.LoginRequest.class), examples = @ExampleObject(value = "{\"username\": \"john.doe\", \"password\": \"SecurePassword123!\"}"))) @RequestBody com.example.api.dto.LoginRequest loginRequest) {
-        if (userService.login(loginRequest.getUsername(), loginRequest.getPassword())) {
-            String token = jwtUtil.generateToken(loginRequest.getUsername(), "USER");
+        Optional<User> user = userService.login(loginRequest.getUsername(), loginRequest.getPassword());
+        if (user.isPresent()) {
+            String token = jwtUtil.generateToken(user.get().getId(), user.get().getUsername(), user.get().getRoles());
             return ResponseEntity.ok(com.example.api.dto.LoginResponse.builder()
                     .token(token)
                     .type("Bearer")
-                    .username(loginRequest.getUsername())
-                    .roles("USER")
+                    .username(user.get().getUsername())
+                    .roles(user.get().getRoles())
                     .build());
         }
         return ResponseEntity.status(401).body("Invalid credentials");
@@ -82,8 +85,8 @@ public class AuthController {
     @GetMapping("/me")
     public ResponseEntity<?> getCurrentUser(
             @Parameter(hidden = true) org.springframework.security.core.Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userService.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        User user = userService.findByUsername(principal.getUsername()).orElseThrow();
         return ResponseEntity.ok(user);
     }
 }
@@ -1,12 +1,26 @@
 package com.example.api.controller;
 
+import com.example.api.dto.BatchSummary;
+import com.example.api.dto.BulkEmailRequest;
+import com.example.api.dto.BulkEmailResult;
+import com.example.api.dto.CursorPage;
 import com.example.api.dto.EmailRequest;
+import com.example.api.dto.EmailUpdateRequest;
+import com.example.api.security.UserPrincipal;
+import com.example.api.service.BatchSendService;
+import com.example.api.service.BulkEmailService;
+import com.example.api.service.ChunkedBlobResource;
+import com.example.api.service.EmailCursor;
+import com.example.api.service.EmailSearchService;
+import com.example.api.service.MailboxService;
+import com.example.api.service.SearchCursor;
+import com.example.common.dto.EmailSummary;
 import com.example.common.entity.Email;
 import com.example.common.entity.OutboundQueue;
-import com.example.common.entity.User;
+import com.example.common.repository.AttachmentRepository;
 import com.example.common.repository.EmailRepository;
 import com.example.common.repository.OutboundQueueRepository;
-import com.example.common.repository.UserRepository;
+import com.example.common.store.MessageStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,10 +29,21 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -26,7 +51,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/emails")
@@ -35,30 +66,126 @@ import java.nio.charset.StandardCharsets;
 @SecurityRequirement(name = "BearerAuth")
 public class EmailController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 200;
+    private static final int MAX_BULK_IDS = 10_000;
+    private static final MediaType MESSAGE_RFC822 = MediaType.parseMediaType("message/rfc822");
+
     private final EmailRepository emailRepository;
     private final OutboundQueueRepository outboundQueueRepository;
-    private final UserRepository userRepository;
+    private final MessageStore messageStore;
+    private final AttachmentRepository attachmentRepository;
     private final JavaMailSender javaMailSender;
+    private final BatchSendService batchSendService;
+    private final EmailSearchService emailSearchService;
+    private final MailboxService mailboxService;
+    private final BulkEmailService bulkEmailService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${download.chunk.size:262144}")
+    private int downloadChunkSize;
 
-    @Operation(summary = "List emails", description = "Retrieves a paginated list of emails for the authenticated user. Optionally filter by folder.")
-    @ApiResponse(responseCode = "200", description = "Paginated list of emails", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Page.class)))
+    @Operation(summary = "List emails", description = "Retrieves a paginated list of email summaries for the authenticated user. Optionally filter by folder. The full body is only returned by GET /api/emails/{id}.")
+    @ApiResponse(responseCode = "200", description = "Paginated list of email summaries", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Page.class)))
     @GetMapping
-    public ResponseEntity<Page<Email>> getEmails(
+    public ResponseEntity<Page<EmailSummary>> getEmails(
             @Parameter(description = "Filter emails by folder ID (optional)") @RequestParam(value = "folderId", required = false) Long folderId,
             @Parameter(description = "Pagination parameters (page, size, sort)") Pageable pageable,
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
 
-        Page<Email> emails;
+        Page<EmailSummary> emails;
         if (folderId != null) {
-            emails = emailRepository.findByUser_IdAndFolder_Id(user.getId(), folderId, pageable);
+            emails = emailRepository.findSummariesByUserAndFolder(principal.getId(), folderId, pageable);
         } else {
-            emails = emailRepository.findByUser_Id(user.getId(), pageable);
+            emails = emailRepository.findSummariesByUser(principal.getId(), pageable);
         }
         return ResponseEntity.ok(emails);
     }
 
+    @Operation(summary = "List emails by cursor", description = "Keyset-paginated listing, newest first. Pass the "
+            + "returned nextCursor to get the following page; it is absent on the last page. Unlike the paged "
+            + "listing this does not count all matching emails unless includeTotal is set, and its cost does not "
+            + "grow with the depth of the page.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One page of email summaries", content = @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<EmailSummary>> getEmailsByCursor(
+            @Parameter(description = "Filter emails by folder ID (optional)") @RequestParam(value = "folderId", required = false) Long folderId,
+            @Parameter(description = "nextCursor from the previous page; omit for the first page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size (1-" + MAX_CURSOR_PAGE_SIZE + ")") @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @Parameter(description = "Also return the total number of matching emails") @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        EmailCursor after;
+        try {
+            after = cursor != null ? EmailCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+        // One extra row tells whether another page follows
+        Pageable window = PageRequest.of(0, size + 1);
+
+        List<EmailSummary> emails;
+        if (folderId != null) {
+            emails = after == null
+                    ? emailRepository.findFirstPageInFolder(principal.getId(), folderId, window)
+                    : emailRepository.findPageAfterInFolder(principal.getId(), folderId, after.getReceivedAt(),
+                            after.getId(), window);
+        } else {
+            emails = after == null
+                    ? emailRepository.findFirstPage(principal.getId(), window)
+                    : emailRepository.findPageAfter(principal.getId(), after.getReceivedAt(), after.getId(), window);
+        }
+
+        String nextCursor = null;
+        if (emails.size() > size) {
+            emails = emails.subList(0, size);
+            EmailSummary last = emails.get(size - 1);
+            nextCursor = new EmailCursor(last.getReceivedAt(), last.getId()).encode();
+        }
+        Long total = null;
+        if (includeTotal) {
+            total = folderId != null
+                    ? emailRepository.countByUser_IdAndFolder_Id(principal.getId(), folderId)
+                    : emailRepository.countByUser_Id(principal.getId());
+        }
+        return ResponseEntity.ok(new CursorPage<>(emails, nextCursor, total));
+    }
+
+    @Operation(summary = "Search emails", description = "Full-text search over subject, sender, recipients and body "
+            + "of the authenticated user's emails, best match first. The query accepts web-search syntax: quoted "
+            + "phrases, OR and -excluded words. Pass the returned nextCursor to get the following page.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One page of matching email summaries", content = @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Empty query or invalid cursor")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<CursorPage<EmailSummary>> searchEmails(
+            @Parameter(description = "Search text", required = true) @RequestParam("q") String query,
+            @Parameter(description = "Filter emails by folder ID (optional)") @RequestParam(value = "folderId", required = false) Long folderId,
+            @Parameter(description = "Only emails received at or after this time (ISO-8601)") @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only emails received before this time (ISO-8601)") @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "nextCursor from the previous page; omit for the first page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size (1-" + MAX_CURSOR_PAGE_SIZE + ")") @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (query.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        SearchCursor after;
+        try {
+            after = cursor != null ? SearchCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+        return ResponseEntity.ok(emailSearchService.search(principal.getId(), query.trim(), folderId, from, to,
+                after, size));
+    }
+
     @Operation(summary = "Get email by ID", description = "Retrieves a single email by its ID. User must own the email.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Email details", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Email.class))),
@@ -69,13 +196,12 @@ public class EmailController {
     public ResponseEntity<Email> getEmail(
             @Parameter(description = "Email ID", required = true) @PathVariable("id") Long id,
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
 
         Email email = emailRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Email not found"));
 
-        if (!email.getUser().getId().equals(user.getId())) {
+        if (!email.getUser().getId().equals(principal.getId())) {
             return ResponseEntity.status(403).build();
         }
         return ResponseEntity.ok(email);
@@ -90,15 +216,14 @@ public class EmailController {
     public ResponseEntity<?> sendEmail(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Email details", required = true, content = @Content(schema = @Schema(implementation = EmailRequest.class))) @RequestBody EmailRequest emailRequest,
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
 
         try {
             // Create MimeMessage to get bytes
             MimeMessage mimeMessage = javaMailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, StandardCharsets.UTF_8.name());
 
-            helper.setFrom(user.getUsername() + "@devprabhakar.in");
+            helper.setFrom(principal.getUsername() + "@devprabhakar.in");
             helper.setTo(emailRequest.getTo());
             helper.setSubject(emailRequest.getSubject());
             helper.setText(emailRequest.getBody(), true); // Assume HTML for now
@@ -109,7 +234,7 @@ public class EmailController {
 
             // Save to OutboundQueue
             OutboundQueue queueItem = new OutboundQueue();
-            queueItem.setSender(user.getUsername());
+            queueItem.setSender(principal.getUsername());
             queueItem.setRecipient(emailRequest.getTo());
             queueItem.setEmailData(emailData);
             queueItem.setStatus("PENDING");
@@ -123,35 +248,103 @@ public class EmailController {
         }
     }
 
-    @Operation(summary = "Update email", description = "Updates email properties such as marking as read/unread or starring")
-    @ApiResponse(responseCode = "200", description = "Email updated successfully")
+    @Operation(summary = "Send emails in bulk", description = "Queues many emails from a streamed NDJSON body. "
+            + "An optional first line {\"template\": {\"subject\", \"body\", \"html\"}} is rendered once and shared; "
+            + "each following line names a recipient (\"to\") or a recipient list (\"recipients\"), optional template "
+            + "\"vars\" and an optional \"idempotencyKey\". The response is NDJSON with one result per recipient "
+            + "followed by a summary line.")
+    @ApiResponse(responseCode = "200", description = "Per-item results", content = @Content(mediaType = "application/x-ndjson"))
+    @PostMapping(value = "/batch", consumes = { "application/x-ndjson", "application/json" })
+    public void sendBatch(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "NDJSON lines", required = true, content = @Content(mediaType = "application/x-ndjson")) InputStream body,
+            HttpServletResponse response,
+            @Parameter(hidden = true) Authentication authentication) throws IOException {
+        String username = ((UserPrincipal) authentication.getPrincipal()).getUsername();
+
+        response.setContentType("application/x-ndjson");
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            BatchSummary summary = batchSendService.send(username, body, results -> {
+                try {
+                    writer.writeAll(results);
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.write(Map.of("summary", summary));
+        }
+    }
+
+    @Operation(summary = "Bulk email action", description = "Marks read or unread, moves or deletes many emails at once. "
+            + "Emails are selected by ids or by a filter of folderId and received from/to (ISO-8601, to exclusive). "
+            + "Folder counters are kept consistent; only emails that actually changed are counted in the result.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Number of emails changed", content = @Content(mediaType = "application/json", schema = @Schema(implementation = BulkEmailResult.class))),
+            @ApiResponse(responseCode = "400", description = "Missing action or selection, too many ids, or invalid target folder")
+    })
+    @PostMapping("/bulk")
+    public ResponseEntity<?> bulkAction(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Action and selection", required = true, content = @Content(schema = @Schema(implementation = BulkEmailRequest.class))) @RequestBody BulkEmailRequest request,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (request.getIds() != null && request.getIds().size() > MAX_BULK_IDS) {
+            return ResponseEntity.badRequest().body("At most " + MAX_BULK_IDS + " ids; use a filter for more");
+        }
+        try {
+            return ResponseEntity.ok(bulkEmailService.apply(principal.getId(), request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Update email", description = "Updates email properties such as marking as read/unread")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Email updated successfully"),
+            @ApiResponse(responseCode = "404", description = "Email not found")
+    })
     @PatchMapping("/{id}")
     public ResponseEntity<?> updateEmail(
             @Parameter(description = "Email ID") @PathVariable("id") Long id,
-            @RequestBody Email updates,
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Fields to change", required = true, content = @Content(schema = @Schema(implementation = EmailUpdateRequest.class))) @RequestBody EmailUpdateRequest updates,
             @Parameter(hidden = true) Authentication authentication) {
-        // Implement update logic (e.g. mark as read)
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (updates.getRead() != null && !mailboxService.setRead(principal.getId(), id, updates.getRead())) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok().build();
     }
 
     @Operation(summary = "Delete email", description = "Permanently deletes an email")
-    @ApiResponse(responseCode = "200", description = "Email deleted successfully")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Email deleted successfully"),
+            @ApiResponse(responseCode = "404", description = "Email not found")
+    })
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteEmail(
             @Parameter(description = "Email ID") @PathVariable("id") Long id,
             @Parameter(hidden = true) Authentication authentication) {
-        emailRepository.deleteById(id);
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (!mailboxService.delete(principal.getId(), id)) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok().build();
     }
 
     @Operation(summary = "Move email to folder", description = "Moves an email to a different folder")
-    @ApiResponse(responseCode = "200", description = "Email moved successfully")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Email moved successfully"),
+            @ApiResponse(responseCode = "404", description = "Email or folder not found")
+    })
     @PostMapping("/{id}/move")
     public ResponseEntity<?> moveEmail(
             @Parameter(description = "Email ID") @PathVariable("id") Long id,
             @Parameter(description = "Target folder ID") @RequestParam("folderId") Long folderId,
             @Parameter(hidden = true) Authentication authentication) {
-        // Implement move logic
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (!mailboxService.move(principal.getId(), id, folderId)) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -165,14 +358,73 @@ public class EmailController {
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "Get email attachment", description = "Downloads a specific attachment from an email")
-    @ApiResponse(responseCode = "200", description = "Attachment retrieved successfully")
+    @Operation(summary = "Get email attachment", description = "Downloads a specific attachment from an email. "
+            + "Supports Range requests for resuming, and If-None-Match with the returned ETag.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Attachment content"),
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the attachment"),
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Attachment not found")
+    })
     @GetMapping("/{id}/attachments/{aid}")
-    public ResponseEntity<?> getAttachment(
+    public ResponseEntity<Resource> getAttachment(
             @Parameter(description = "Email ID") @PathVariable("id") Long id,
             @Parameter(description = "Attachment ID") @PathVariable("aid") Long aid,
             @Parameter(hidden = true) Authentication authentication) {
-        // Implement get attachment logic
-        return ResponseEntity.ok().build();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+
+        AttachmentRepository.AttachmentInfo info = attachmentRepository.findInfo(aid)
+                .filter(a -> id.equals(a.getEmailId()) && principal.getId().equals(a.getOwnerId()))
+                .orElse(null);
+        if (info == null) {
+            return ResponseEntity.notFound().build();
+        }
+        long length = info.getSize() != null ? info.getSize() : 0;
+        MediaType contentType;
+        try {
+            contentType = info.getContentType() != null ? MediaType.parseMediaType(info.getContentType())
+                    : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (InvalidMediaTypeException e) {
+            contentType = MediaType.APPLICATION_OCTET_STREAM;
+        }
+        // Attachments are never modified in place
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag("\"a" + aid + "-" + length + "\"")
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(info.getFilename() != null ? info.getFilename() : "attachment-" + aid,
+                                StandardCharsets.UTF_8)
+                        .build().toString())
+                .body(new ChunkedBlobResource("Attachment " + aid, length, downloadChunkSize,
+                        (offset, count) -> attachmentRepository.readChunk(aid, offset, count)));
+    }
+
+    @Operation(summary = "Get raw email", description = "Downloads the original RFC 822 message as received. "
+            + "Supports Range requests for resuming, and If-None-Match with the returned ETag.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The message", content = @Content(mediaType = "message/rfc822")),
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the message"),
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Email not found or received before raw messages were kept")
+    })
+    @GetMapping("/{id}/raw")
+    public ResponseEntity<Resource> getRawEmail(
+            @Parameter(description = "Email ID", required = true) @PathVariable("id") Long id,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+
+        if (!emailRepository.existsByIdAndUser_Id(id, principal.getId())) {
+            return ResponseEntity.notFound().build();
+        }
+        Long length = messageStore.length(id);
+        if (length == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Raw messages are never modified in place
+        return ResponseEntity.ok()
+                .contentType(MESSAGE_RFC822)
+                .eTag("\"m" + id + "-" + length + "\"")
+                .body(new ChunkedBlobResource("Raw message " + id, length, downloadChunkSize,
+                        (offset, count) -> messageStore.read(id, offset - 1, count)));
     }
 }
@@ -0,0 +1,43 @@
+package com.example.api.controller;
+
+import com.example.api.security.UserPrincipal;
+import com.example.api.service.MailEventHub;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/events")
+@RequiredArgsConstructor
+@Tag(name = "Events", description = "Real-time mailbox notifications")
+@SecurityRequirement(name = "BearerAuth")
+public class EventController {
+
+    private final MailEventHub mailEventHub;
+
+    @Operation(summary = "Stream mailbox events", description = "Server-Sent Events for the authenticated user: "
+            + "NEW_MESSAGE and FLAG_CHANGED carry the email summary, FOLDER_COUNTERS the folder's counters. "
+            + "Reconnect with Last-Event-ID (sent automatically by EventSource) to receive the events missed; "
+            + "a RESYNC event means too many were missed and the client should reload.")
+    @ApiResponse(responseCode = "200", description = "Event stream", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE))
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @Parameter(description = "Id of the last event received") @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @Parameter(description = "Alternative to the Last-Event-ID header") @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        return mailEventHub.subscribe(principal.getId(), lastEventId != null ? lastEventId : lastEventIdParam);
+    }
+}
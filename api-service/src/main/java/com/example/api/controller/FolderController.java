@@ -1,18 +1,25 @@
 package com.example.api.controller;
 
 import com.example.api.dto.FolderRequest;
+import com.example.api.dto.FolderTreeNode;
+import com.example.api.security.UserPrincipal;
+import com.example.api.service.FolderTreeService;
+import com.example.api.service.MailboxService;
+import com.example.common.dto.FolderSummary;
 import com.example.common.entity.Folder;
-import com.example.common.entity.User;
 import com.example.common.repository.FolderRepository;
 import com.example.common.repository.UserRepository;
+import com.example.common.retention.MailboxPurger;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -28,16 +35,26 @@ public class FolderController {
 
     private final FolderRepository folderRepository;
     private final UserRepository userRepository;
+    private final MailboxService mailboxService;
+    private final FolderTreeService folderTreeService;
+    private final MailboxPurger mailboxPurger;
 
-    @Operation(summary = "List all folders", description = "Retrieves all email folders for the authenticated user")
+    @Operation(summary = "List all folders", description = "Retrieves all email folders for the authenticated user with their total, unread and size counters")
     @ApiResponse(responseCode = "200", description = "List of folders", content = @Content(mediaType = "application/json", schema = @Schema(implementation = List.class)))
     @GetMapping
-    public ResponseEntity<List<Folder>> getFolders(
+    public ResponseEntity<List<FolderSummary>> getFolders(
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
-        List<Folder> folders = folderRepository.findByUser(user);
-        return ResponseEntity.ok(folders);
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(folderRepository.findSummariesByUser(principal.getId()));
+    }
+
+    @Operation(summary = "Get folder tree", description = "Retrieves the authenticated user's folders as a nested tree of ids and names, sorted by name")
+    @ApiResponse(responseCode = "200", description = "Top-level folders with their subfolders", content = @Content(mediaType = "application/json", schema = @Schema(implementation = List.class)))
+    @GetMapping("/tree")
+    public ResponseEntity<List<FolderTreeNode>> getFolderTree(
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(folderTreeService.tree(principal.getId()));
     }
 
     @Operation(summary = "Create a new folder", description = "Creates a new email folder. Can optionally specify a parent folder for nested organization.")
@@ -46,41 +63,108 @@ public class FolderController {
     public ResponseEntity<?> createFolder(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Folder details", required = true, content = @Content(schema = @Schema(implementation = FolderRequest.class))) @RequestBody FolderRequest request,
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
 
         Folder folder = new Folder();
         folder.setName(request.getName());
-        folder.setUser(user);
+        folder.setUser(userRepository.getReferenceById(principal.getId()));
 
         if (request.getParentId() != null) {
-            Folder parent = folderRepository.findById(request.getParentId())
+            Folder parent = folderRepository.findByIdAndUser_Id(request.getParentId(), principal.getId())
                     .orElseThrow(() -> new RuntimeException("Parent folder not found"));
             folder.setParent(parent);
         }
 
-        folderRepository.save(folder);
+        mailboxService.createFolder(folder);
+        folderTreeService.evict(principal.getId());
         return ResponseEntity.ok("Folder created successfully");
     }
 
-    @Operation(summary = "Update folder", description = "Updates folder properties like name or parent folder")
-    @ApiResponse(responseCode = "200", description = "Folder updated successfully")
+    @Operation(summary = "Rename folder", description = "Changes the name of a folder")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Folder renamed successfully"),
+            @ApiResponse(responseCode = "400", description = "Missing name"),
+            @ApiResponse(responseCode = "404", description = "Folder not found"),
+            @ApiResponse(responseCode = "409", description = "A sibling folder already has this name")
+    })
     @PatchMapping("/{id}")
     public ResponseEntity<?> updateFolder(
             @Parameter(description = "Folder ID") @PathVariable("id") Long id,
-            @RequestBody Folder updates,
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "New folder name", required = true, content = @Content(schema = @Schema(implementation = FolderRequest.class))) @RequestBody FolderRequest updates,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        if (updates.getName() == null || updates.getName().isBlank()) {
+            return ResponseEntity.badRequest().body("Folder name is required");
+        }
+        try {
+            if (!mailboxService.renameFolder(principal.getId(), id, updates.getName())) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(409).body("A folder with this name already exists here");
+        } finally {
+            folderTreeService.evict(principal.getId());
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @Operation(summary = "Move folder", description = "Moves a folder under another folder, or to the top level when parentId is omitted")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Folder moved successfully"),
+            @ApiResponse(responseCode = "400", description = "Target is the folder itself or one of its subfolders"),
+            @ApiResponse(responseCode = "404", description = "Folder or parent not found"),
+            @ApiResponse(responseCode = "409", description = "The target already has a folder with this name")
+    })
+    @PostMapping("/{id}/move")
+    public ResponseEntity<?> moveFolder(
+            @Parameter(description = "Folder ID") @PathVariable("id") Long id,
+            @Parameter(description = "New parent folder ID (omit for top level)") @RequestParam(value = "parentId", required = false) Long parentId,
             @Parameter(hidden = true) Authentication authentication) {
-        // Implement update logic
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        try {
+            if (!mailboxService.moveFolder(principal.getId(), id, parentId)) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(409).body("A folder with this name already exists there");
+        } finally {
+            folderTreeService.evict(principal.getId());
+        }
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "Delete folder", description = "Permanently deletes a folder and optionally its contents")
-    @ApiResponse(responseCode = "200", description = "Folder deleted successfully")
+    @Operation(summary = "Delete folder", description = "Deletes a folder without subfolders. With purge=true its emails are "
+            + "deleted first, in batches; otherwise the folder must be empty.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Folder deleted successfully"),
+            @ApiResponse(responseCode = "404", description = "Folder not found"),
+            @ApiResponse(responseCode = "409", description = "Folder still has subfolders or emails")
+    })
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteFolder(
             @Parameter(description = "Folder ID") @PathVariable("id") Long id,
+            @Parameter(description = "Delete the folder's emails first") @RequestParam(value = "purge", defaultValue = "false") boolean purge,
             @Parameter(hidden = true) Authentication authentication) {
-        folderRepository.deleteById(id);
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        try {
+            if (purge) {
+                // A folder with subfolders is refused before any of its emails are deleted
+                if (!mailboxService.checkDeletable(principal.getId(), id)) {
+                    return ResponseEntity.notFound().build();
+                }
+                mailboxPurger.purgeFolder(principal.getId(), id, null, deleted -> {
+                });
+            }
+            if (!mailboxService.deleteFolder(principal.getId(), id)) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        } finally {
+            folderTreeService.evict(principal.getId());
+        }
         return ResponseEntity.ok().build();
     }
 }
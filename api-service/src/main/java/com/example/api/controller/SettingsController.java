@@ -1,9 +1,11 @@
 package com.example.api.controller;
 
+import com.example.api.security.UserPrincipal;
+import com.example.api.service.SettingsService;
+import com.example.api.service.UserService;
+import com.example.common.cache.SettingsCache;
 import com.example.common.entity.Settings;
 import com.example.common.entity.User;
-import com.example.common.repository.SettingsRepository;
-import com.example.common.repository.UserRepository;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -23,25 +25,20 @@ import org.springframework.web.bind.annotation.*;
 @SecurityRequirement(name = "BearerAuth")
 public class SettingsController {
 
-    private final SettingsRepository settingsRepository;
-    private final UserRepository userRepository;
+    private final SettingsService settingsService;
+    private final UserService userService;
+    private final SettingsCache settingsCache;
 
     @Operation(summary = "Get user settings", description = "Retrieves the settings for the authenticated user. Creates default settings if none exist.")
     @ApiResponse(responseCode = "200", description = "User settings", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Settings.class)))
     @GetMapping
     public ResponseEntity<Settings> getSettings(
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        User user = userService.findByUsername(principal.getUsername()).orElseThrow();
 
-        Settings settings = settingsRepository.findByUser(user)
-                .orElseGet(() -> {
-                    Settings s = new Settings();
-                    s.setUser(user);
-                    s.setTheme("light");
-                    s.setNotificationsEnabled(true);
-                    return settingsRepository.save(s);
-                });
+        Settings settings = settingsCache.get(user.getId())
+                .orElseGet(() -> settingsService.createDefaults(user));
 
         return ResponseEntity.ok(settings);
     }
@@ -52,22 +49,9 @@ public class SettingsController {
     public ResponseEntity<Settings> updateSettings(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Updated settings", required = true, content = @Content(schema = @Schema(implementation = Settings.class))) @RequestBody Settings updatedSettings,
             @Parameter(hidden = true) Authentication authentication) {
-        String username = (String) authentication.getPrincipal();
-        User user = userRepository.findByUsername(username).orElseThrow();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        User user = userService.findByUsername(principal.getUsername()).orElseThrow();
 
-        Settings settings = settingsRepository.findByUser(user)
-                .orElseGet(() -> {
-                    Settings s = new Settings();
-                    s.setUser(user);
-                    return s;
-                });
-
-        if (updatedSettings.getTheme() != null)
-            settings.setTheme(updatedSettings.getTheme());
-        if (updatedSettings.getSignature() != null)
-            settings.setSignature(updatedSettings.getSignature());
-        settings.setNotificationsEnabled(updatedSettings.isNotificationsEnabled());
-
-        return ResponseEntity.ok(settingsRepository.save(settings));
+        return ResponseEntity.ok(settingsService.update(user, updatedSettings));
     }
 }
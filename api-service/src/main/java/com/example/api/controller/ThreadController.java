@@ -0,0 +1,90 @@
+package com.example.api.controller;
+
+import com.example.api.dto.CursorPage;
+import com.example.api.security.UserPrincipal;
+import com.example.api.service.EmailCursor;
+import com.example.common.dto.EmailSummary;
+import com.example.common.dto.ThreadSummary;
+import com.example.common.repository.EmailRepository;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/threads")
+@RequiredArgsConstructor
+@Tag(name = "Conversations", description = "Emails grouped into conversations when they are received")
+@SecurityRequirement(name = "BearerAuth")
+public class ThreadController {
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final EmailRepository emailRepository;
+
+    @Operation(summary = "List conversations", description = "Keyset-paginated conversation summaries, most recent "
+            + "activity first. Each summary carries the latest email and the number of emails and unread emails "
+            + "in the conversation. Pass the returned nextCursor to get the following page.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One page of conversation summaries", content = @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping
+    public ResponseEntity<CursorPage<ThreadSummary>> getThreads(
+            @Parameter(description = "nextCursor from the previous page; omit for the first page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Page size (1-" + MAX_PAGE_SIZE + ")") @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        EmailCursor after;
+        try {
+            after = cursor != null ? EmailCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells whether another page follows
+        Pageable window = PageRequest.of(0, size + 1);
+
+        List<ThreadSummary> threads = after == null
+                ? emailRepository.findFirstThreadPage(principal.getId(), window)
+                : emailRepository.findThreadPageAfter(principal.getId(), after.getReceivedAt(), after.getId(),
+                        window);
+
+        String nextCursor = null;
+        if (threads.size() > size) {
+            threads = threads.subList(0, size);
+            ThreadSummary last = threads.get(size - 1);
+            nextCursor = new EmailCursor(last.getLatestAt(), last.getLatestEmailId()).encode();
+        }
+        return ResponseEntity.ok(new CursorPage<>(threads, nextCursor, null));
+    }
+
+    @Operation(summary = "Get conversation", description = "Summaries of the emails in a conversation, oldest first.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Emails in the conversation"),
+            @ApiResponse(responseCode = "404", description = "No such conversation")
+    })
+    @GetMapping("/{threadId}")
+    public ResponseEntity<List<EmailSummary>> getThread(
+            @Parameter(description = "Thread ID from the conversation listing", required = true) @PathVariable("threadId") Long threadId,
+            @Parameter(hidden = true) Authentication authentication) {
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        List<EmailSummary> emails = emailRepository.findThread(principal.getId(), threadId);
+        if (emails.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emails);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * System statistics served to the admin dashboard. Rates cover the last
+ * complete minute and the last hour; storage and the user count are as of
+ * {@code reconciledAt} plus the messages received since.
+ */
+@Data
+@NoArgsConstructor
+public class AdminStats {
+    private long users;
+    private Map<String, Long> queue;
+    private Rate received;
+    private Rate sent;
+    private long storageBytes;
+    private List<UserStorage> topStorage;
+    private List<DomainCount> topSenderDomains;
+    private LocalDateTime updatedAt;
+    private LocalDateTime reconciledAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Rate {
+        private long lastMinute;
+        private long lastHour;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UserStorage {
+        private Long userId;
+        private String username;
+        private long bytes;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DomainCount {
+        private String domain;
+        private long messages;
+    }
+}
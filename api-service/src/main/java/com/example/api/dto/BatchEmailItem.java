@@ -0,0 +1,21 @@
+package com.example.api.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One line of a batch send request (NDJSON). The first line may carry only a
+ * {@link #template}, which is then shared by all following lines.
+ */
+@Data
+public class BatchEmailItem {
+    private EmailTemplate template;
+    private String to;
+    private List<String> recipients;
+    private String subject;
+    private String body;
+    private Map<String, String> vars;
+    private String idempotencyKey;
+}
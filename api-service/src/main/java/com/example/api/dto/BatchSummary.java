@@ -0,0 +1,11 @@
+package com.example.api.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchSummary {
+    private long lines;
+    private long queued;
+    private long duplicates;
+    private long failed;
+}
@@ -0,0 +1,26 @@
+package com.example.api.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A bulk action on the caller's emails, selected either by {@link #ids} or
+ * by a filter of folder and {@code [from, to)} received range.
+ */
+@Data
+public class BulkEmailRequest {
+
+    public enum Action {
+        MARK_READ, MARK_UNREAD, MOVE, DELETE
+    }
+
+    private Action action;
+    private List<Long> ids;
+    private Long folderId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    // Required for MOVE
+    private Long targetFolderId;
+}
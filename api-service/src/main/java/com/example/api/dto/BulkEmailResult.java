@@ -0,0 +1,14 @@
+package com.example.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkEmailResult {
+    private BulkEmailRequest.Action action;
+    // Emails actually changed; ones already in the requested state are not counted
+    private long affected;
+}
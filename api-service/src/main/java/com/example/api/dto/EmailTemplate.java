@@ -0,0 +1,10 @@
+package com.example.api.dto;
+
+import lombok.Data;
+
+@Data
+public class EmailTemplate {
+    private String subject;
+    private String body;
+    private boolean html = true;
+}
@@ -0,0 +1,9 @@
+package com.example.api.dto;
+
+import lombok.Data;
+
+@Data
+public class EmailUpdateRequest {
+    // Left unchanged when null
+    private Boolean read;
+}
@@ -0,0 +1,23 @@
+package com.example.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class FolderTreeNode {
+    private Long id;
+    private String name;
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<FolderTreeNode> children = new ArrayList<>();
+
+    public FolderTreeNode(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.api.dto;
+
+import com.example.common.dto.EmailSummary;
+import com.example.common.entity.FolderCounter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data of one server-sent mailbox event: the email for message events, the
+ * folder counters for counter events.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MailEventData {
+    private Long emailId;
+    private Long folderId;
+    private EmailSummary email;
+    private FolderCounter counters;
+}
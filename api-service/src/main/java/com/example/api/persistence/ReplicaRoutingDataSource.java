@@ -0,0 +1,197 @@
+package com.example.api.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the connections of read-only transactions to a replica and all
+ * others to the primary. Spring Data repository reads run in read-only
+ * transactions unless they join a read-write one, so listings, fetches,
+ * folders and settings go to replicas while writes, and reads made in the
+ * transaction of a write, stay on the primary.
+ *
+ * Replicas are picked round-robin among those whose lag, measured by the lag
+ * query every check interval, is at most the allowed lag; with none left,
+ * reads go to the primary. After a user's read-write transaction commits,
+ * that user's reads go to the primary for the sticky period, so a client
+ * always sees its own changes. The period should exceed the allowed lag plus
+ * the check interval. Users are told apart by the authenticated name of the
+ * current thread; stickiness is per API instance.
+ *
+ * Must sit behind a {@code LazyConnectionDataSourceProxy}: the transaction
+ * manager asks for the connection before the transaction is marked read-only,
+ * and the proxy defers the choice to the first statement.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    /** Seconds since the last replayed transaction, 0 when a PostgreSQL standby has replayed all it received. */
+    public static final String POSTGRES_LAG_QUERY = "SELECT COALESCE(CASE WHEN pg_last_wal_receive_lsn() = "
+            + "pg_last_wal_replay_lsn() THEN 0 ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END, 0)";
+
+    private final Map<String, DataSource> replicas;
+    private final Map<String, JdbcTemplate> lagChecks = new LinkedHashMap<>();
+    private final String lagQuery;
+    private final long maxLagMs;
+    private final long checkIntervalMs;
+    private final Cache<String, Boolean> recentWriters;
+    private final Map<String, Double> lagSeconds = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter replicaReads;
+    private final Counter stickyReads;
+    private final Counter fallbackReads;
+
+    private volatile List<String> healthy = List.of();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param replicas read-only pools by name, closed with this data source
+     * @param lagQuery returns the replica's lag in seconds
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, String lagQuery,
+            long maxLagMs, long checkIntervalMs, long stickyMs, MeterRegistry meterRegistry) {
+        this.replicas = replicas;
+        this.lagQuery = lagQuery;
+        this.maxLagMs = maxLagMs;
+        this.checkIntervalMs = checkIntervalMs;
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMillis(stickyMs))
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        replicas.forEach((name, dataSource) -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(checkIntervalMs)));
+            lagChecks.put(name, jdbcTemplate);
+            meterRegistry.gauge("db.replica.lag", Tags.of("replica", name), lagSeconds,
+                    lags -> lags.getOrDefault(name, Double.NaN));
+        });
+        replicaReads = meterRegistry.counter("db.reads.routed", "target", "replica");
+        stickyReads = meterRegistry.counter("db.reads.routed", "target", "primary-sticky");
+        fallbackReads = meterRegistry.counter("db.reads.routed", "target", "primary-fallback");
+    }
+
+    public void start() {
+        checkLag();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkLag, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    log.warn("Closing replica pool failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Where a connection requested now would go: {@value #PRIMARY} or a replica name. */
+    public String currentTarget() {
+        return (String) determineCurrentLookupKey();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String user = currentUser();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (user != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        recentWriters.put(user, Boolean.TRUE);
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+        if (user != null && recentWriters.getIfPresent(user) != null) {
+            stickyReads.increment();
+            return PRIMARY;
+        }
+        List<String> candidates = healthy;
+        if (candidates.isEmpty()) {
+            fallbackReads.increment();
+            return PRIMARY;
+        }
+        replicaReads.increment();
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    void checkLag() {
+        List<String> current = new ArrayList<>(lagChecks.size());
+        for (Map.Entry<String, JdbcTemplate> entry : lagChecks.entrySet()) {
+            String name = entry.getKey();
+            boolean wasHealthy = healthy.contains(name);
+            try {
+                Double lag = entry.getValue().queryForObject(lagQuery, Double.class);
+                double seconds = lag != null ? lag : 0;
+                lagSeconds.put(name, seconds);
+                if (seconds * 1000 <= maxLagMs) {
+                    current.add(name);
+                    if (!wasHealthy) {
+                        log.info("Replica {} in use, lag {} s", name, seconds);
+                    }
+                } else if (wasHealthy) {
+                    log.warn("Replica {} lags {} s, reading from the others", name, seconds);
+                }
+            } catch (RuntimeException e) {
+                lagSeconds.remove(name);
+                if (wasHealthy) {
+                    log.warn("Replica {} unavailable, reading from the others: {}", name, e.getMessage());
+                }
+            }
+        }
+        healthy = List.copyOf(current);
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken) ? authentication.getName() : null;
+    }
+}
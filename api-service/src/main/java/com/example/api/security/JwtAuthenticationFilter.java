@@ -1,5 +1,7 @@
 package com.example.api.security;
 
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.repository.UserRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -11,15 +13,25 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
+/**
+ * Authenticates requests by their bearer token. The token identifies the
+ * user; the username and roles are the user's current ones, looked up the
+ * first time a token is seen and again after every change to the user, so a
+ * demoted or deleted user loses access within one cache poll rather than when
+ * the token expires.
+ */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
+    private final UserRepository userRepository;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserRepository userRepository,
+            ReferenceDataCache referenceDataCache) {
         this.jwtUtil = jwtUtil;
+        this.userRepository = userRepository;
+        referenceDataCache.onUserChanged(jwtUtil::evictUser);
     }
 
     @Override
@@ -28,22 +40,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
-
-        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
-            try {
-                username = jwtUtil.extractUsername(jwt);
-            } catch (Exception e) {
-                // Invalid token
-            }
-        }
-
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            if (jwtUtil.validateToken(jwt, username)) {
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // One verify-and-decode pass; null for an invalid or expired token or a deleted user
+            UserPrincipal principal = jwtUtil.verify(authorizationHeader.substring(7), this::current);
+            if (principal != null) {
                 UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
-                        username, null, new ArrayList<>());
+                        principal, null, principal.getAuthorities());
                 usernamePasswordAuthenticationToken
                         .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
@@ -51,4 +54,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         chain.doFilter(request, response);
     }
+
+    private UserPrincipal current(UserPrincipal claimed) {
+        if (claimed.getId() == null) {
+            return null;
+        }
+        // From the second-level cache, which every node evicts on USER_CHANGED
+        return userRepository.findById(claimed.getId())
+                .map(user -> new UserPrincipal(user.getId(), user.getUsername(), user.getRoles()))
+                .orElse(null);
+    }
 }
@@ -1,22 +1,116 @@
 package com.example.api.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 @Component
 public class JwtUtil {
 
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLES_CLAIM = "roles";
+
     private final Key SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
 
+    // Immutable and thread-safe once built
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(SECRET_KEY).build();
+
+    /**
+     * Recently verified tokens, keyed by their SHA-256 digest so that bearer
+     * tokens are not held in memory. Each entry expires with its token.
+     */
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JwtUtil() {
+        this(10_000);
+    }
+
+    @Autowired
+    public JwtUtil(@Value("${app.jwt.verified-cache-size:10000}") int verifiedCacheSize) {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(
+                                Math.max(value.expiresAtMillis - System.currentTimeMillis(), 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Verifies the signature and expiry of a token and decodes its principal
+     * in a single pass, or returns {@code null} if the token is not valid.
+     * Tokens seen before are answered from the cache until they expire.
+     */
+    public UserPrincipal verify(String token) {
+        return verify(token, UnaryOperator.identity());
+    }
+
+    /**
+     * As {@link #verify(String)}, but passes the principal decoded from a
+     * token not in the cache through {@code current}, which returns the
+     * user's current principal or null to reject the token. What it returns
+     * is cached until the token expires or {@link #evictUser(Long)} is called.
+     */
+    public UserPrincipal verify(String token, UnaryOperator<UserPrincipal> current) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && cached.expiresAtMillis > System.currentTimeMillis()) {
+            return cached.principal;
+        }
+        Claims claims;
+        try {
+            claims = extractAllClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        UserPrincipal principal = current.apply(toPrincipal(claims));
+        if (principal != null && claims.getExpiration() != null) {
+            verifiedTokens.put(digest, new VerifiedToken(principal, claims.getExpiration().getTime()));
+        }
+        return principal;
+    }
+
+    /** Drops the user's cached tokens, so their next use looks the user up again. */
+    public void evictUser(Long userId) {
+        verifiedTokens.asMap().values().removeIf(verified -> userId.equals(verified.principal.getId()));
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -31,16 +125,24 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder().setSigningKey(SECRET_KEY).build().parseClaimsJws(token).getBody();
+        // Rejects bad signatures and expired tokens
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public UserPrincipal extractPrincipal(String token) {
+        return toPrincipal(extractAllClaims(token));
     }
 
-    public String generateToken(String username, String roles) {
+    private UserPrincipal toPrincipal(Claims claims) {
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        return new UserPrincipal(userId != null ? userId.longValue() : null, claims.getSubject(),
+                claims.get(ROLES_CLAIM, String.class));
+    }
+
+    public String generateToken(Long userId, String username, String roles) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("roles", roles);
+        claims.put(USER_ID_CLAIM, userId);
+        claims.put(ROLES_CLAIM, roles);
         return createToken(claims, username);
     }
 
@@ -51,7 +153,26 @@ public class JwtUtil {
     }
 
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        final Claims claims = extractAllClaims(token);
+        return (claims.getSubject().equals(username) && claims.getExpiration().after(new Date()));
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class VerifiedToken {
+        private final UserPrincipal principal;
+        private final long expiresAtMillis;
+
+        private VerifiedToken(UserPrincipal principal, long expiresAtMillis) {
+            this.principal = principal;
+            this.expiresAtMillis = expiresAtMillis;
+        }
     }
 }
@@ -0,0 +1,50 @@
+package com.example.api.security;
+
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The authenticated user: the id from the JWT claims, with the username and
+ * roles the user currently has, so request handling does not need to look
+ * the user up to learn them.
+ */
+@Getter
+public class UserPrincipal implements Principal {
+
+    private final Long id;
+    private final String username;
+    private final String roles;
+
+    public UserPrincipal(Long id, String username, String roles) {
+        this.id = id;
+        this.username = username;
+        this.roles = roles;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if (roles != null) {
+            for (String role : roles.split(",")) {
+                if (!role.isBlank()) {
+                    authorities.add(new SimpleGrantedAuthority("ROLE_" + role.trim()));
+                }
+            }
+        }
+        return authorities;
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
+}
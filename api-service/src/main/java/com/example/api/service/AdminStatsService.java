@@ -0,0 +1,278 @@
+package com.example.api.service;
+
+import com.example.api.dto.AdminStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * System statistics kept in memory so that dashboard refreshes never
+ * aggregate {@code emails} or {@code outbound_queue}.
+ *
+ * Messages are written by both services, so instead of hooking every writer a
+ * tick reads only what changed recently: the emails received, along the
+ * {@code received_at} index (counted per minute received, per sender domain
+ * and per owner's storage), and the rows sent, along the status index by the
+ * time they were sent. Ids cannot mark progress:
+ * each node takes them from its own block of the pooled sequences, so they do
+ * not arrive in order. Instead every tick re-reads the last
+ * {@code stats.lookback.seconds}, which also covers rows committed late or
+ * stamped by a node whose clock is behind, and skips the rows it has already
+ * counted. A reconcile replaces the user count, storage per user and queue
+ * totals with full aggregates, which also corrects for deletes; the counts of
+ * unsent rows are only taken then, as the queue worker changes them in the
+ * other service.
+ */
+@Service
+@Slf4j
+public class AdminStatsService {
+
+    private static final String SENT = "SENT";
+    private static final int MAX_ROWS_PER_TICK = 10_000;
+    private static final int MAX_DOMAINS_PER_MINUTE = 10_000;
+    private static final int WINDOW_MINUTES = 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long tickSeconds;
+    private final long reconcileSeconds;
+    private final int topSize;
+    private final long lookbackMs;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "admin-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final MinuteWindow received = new MinuteWindow(WINDOW_MINUTES + 1, MAX_DOMAINS_PER_MINUTE);
+    private final MinuteWindow sent = new MinuteWindow(WINDOW_MINUTES + 1, 0);
+    private final ConcurrentMap<Long, Long> storageByUser = new ConcurrentHashMap<>();
+
+    // Written only by the scheduler thread: the rows counted within the lookback, by id
+    private final Map<Long, RecentEmail> recentEmails = new HashMap<>();
+    private final Map<Long, Long> recentSent = new HashMap<>();
+    private boolean reconciled;
+    private long sentTotal;
+
+    private volatile Map<Long, String> usernames = Map.of();
+    private volatile Map<String, Long> queue = Map.of();
+    private volatile long users;
+    private volatile LocalDateTime updatedAt;
+    private volatile LocalDateTime reconciledAt;
+
+    public AdminStatsService(JdbcTemplate jdbcTemplate,
+            @Value("${stats.tick.seconds:5}") long tickSeconds,
+            @Value("${stats.reconcile.seconds:600}") long reconcileSeconds,
+            @Value("${stats.top.size:10}") int topSize,
+            @Value("${stats.lookback.seconds:60}") long lookbackSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tickSeconds = tickSeconds;
+        this.reconcileSeconds = reconcileSeconds;
+        this.topSize = topSize;
+        this.lookbackMs = lookbackSeconds * 1000;
+    }
+
+    @PostConstruct
+    void start() {
+        // One thread, so ticks and reconciles never interleave
+        scheduler.scheduleWithFixedDelay(this::reconcile, 0, reconcileSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::tick, tickSeconds, tickSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public AdminStats getStats() {
+        long minute = currentMinute();
+        AdminStats stats = new AdminStats();
+        stats.setUsers(users);
+        stats.setQueue(queue);
+        stats.setReceived(new AdminStats.Rate(received.count(minute - 1, minute - 1),
+                received.count(minute - WINDOW_MINUTES + 1, minute)));
+        stats.setSent(new AdminStats.Rate(sent.count(minute - 1, minute - 1),
+                sent.count(minute - WINDOW_MINUTES + 1, minute)));
+
+        Map<Long, String> names = usernames;
+        long total = 0;
+        for (long bytes : storageByUser.values()) {
+            total += bytes;
+        }
+        stats.setStorageBytes(total);
+        stats.setTopStorage(storageByUser.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                .limit(topSize)
+                .map(e -> new AdminStats.UserStorage(e.getKey(), names.get(e.getKey()), e.getValue()))
+                .toList());
+        stats.setTopSenderDomains(received.keys(minute - WINDOW_MINUTES + 1, minute).entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(topSize)
+                .map(e -> new AdminStats.DomainCount(e.getKey(), e.getValue()))
+                .toList());
+        stats.setUpdatedAt(updatedAt);
+        stats.setReconciledAt(reconciledAt);
+        return stats;
+    }
+
+    void tick() {
+        try {
+            if (!reconciled) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            readNewEmails(now);
+            readNewSent(now);
+            Map<String, Long> current = new HashMap<>(queue);
+            current.put(SENT, sentTotal);
+            queue = current;
+            updatedAt = LocalDateTime.now();
+        } catch (RuntimeException e) {
+            log.warn("Updating admin statistics failed: {}", e.getMessage());
+        }
+    }
+
+    void reconcile() {
+        try {
+            users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+
+            // The recent rows are counted first; the aggregates cover only what is older, so the
+            // two never overlap and later ticks add only rows neither has seen
+            long now = System.currentTimeMillis();
+            readNewEmails(now);
+            readNewSent(now);
+            Timestamp cutoff = new Timestamp(now - lookbackMs);
+
+            Map<Long, String> names = new HashMap<>();
+            Map<Long, Long> storage = new HashMap<>();
+            jdbcTemplate.query("SELECT u.id, u.username, COALESCE(s.bytes, 0) FROM users u "
+                    + "LEFT JOIN (SELECT user_id, SUM(size_bytes) AS bytes FROM emails "
+                    + "WHERE received_at IS NULL OR received_at < ? GROUP BY user_id) s ON s.user_id = u.id", rs -> {
+                        names.put(rs.getLong(1), rs.getString(2));
+                        storage.put(rs.getLong(1), rs.getLong(3));
+                    }, cutoff);
+            for (RecentEmail email : recentEmails.values()) {
+                if (email.userId != null) {
+                    storage.merge(email.userId, email.sizeBytes, Long::sum);
+                }
+            }
+            usernames = names;
+            storageByUser.clear();
+            storageByUser.putAll(storage);
+
+            Map<String, Long> totals = new HashMap<>();
+            jdbcTemplate.query("SELECT status, COUNT(*) FROM outbound_queue WHERE status <> '" + SENT + "' "
+                    + "OR next_retry_at IS NULL OR next_retry_at < ? GROUP BY status", rs -> {
+                        totals.put(rs.getString(1), rs.getLong(2));
+                    }, cutoff);
+            sentTotal = totals.getOrDefault(SENT, 0L) + recentSent.size();
+            totals.put(SENT, sentTotal);
+            queue = totals;
+
+            reconciled = true;
+            reconciledAt = LocalDateTime.now();
+            updatedAt = reconciledAt;
+        } catch (RuntimeException e) {
+            log.warn("Reconciling admin statistics failed: {}", e.getMessage());
+        }
+    }
+
+    private void readNewEmails(long now) {
+        long since = now - lookbackMs;
+        recentEmails.values().removeIf(email -> email.receivedAt < since);
+        Timestamp after = new Timestamp(since);
+        long afterId = 0;
+        List<Object[]> emails;
+        do {
+            // Keyset along (received_at, id); the first page starts at the lookback, inclusive
+            emails = jdbcTemplate.query("SELECT id, user_id, sender, size_bytes, received_at FROM emails "
+                    + "WHERE received_at > ? OR (received_at = ? AND id > ?) ORDER BY received_at, id "
+                    + "LIMIT " + MAX_ROWS_PER_TICK,
+                    (rs, i) -> new Object[] { rs.getLong(1), rs.getObject(2, Long.class), rs.getString(3),
+                            rs.getLong(4), rs.getTimestamp(5) },
+                    after, after, afterId);
+            for (Object[] email : emails) {
+                long id = (Long) email[0];
+                after = (Timestamp) email[4];
+                afterId = id;
+                if (recentEmails.containsKey(id)) {
+                    continue;
+                }
+                RecentEmail recent = new RecentEmail(after.getTime(), (Long) email[1], (Long) email[3]);
+                recentEmails.put(id, recent);
+                received.add(recent.receivedAt / 60_000, domainOf((String) email[2]), 1);
+                if (recent.userId != null) {
+                    storageByUser.merge(recent.userId, recent.sizeBytes, Long::sum);
+                }
+            }
+        } while (emails.size() == MAX_ROWS_PER_TICK);
+    }
+
+    private void readNewSent(long now) {
+        long since = now - lookbackMs;
+        recentSent.values().removeIf(sentAt -> sentAt < since);
+        Timestamp after = new Timestamp(since);
+        long afterId = 0;
+        List<Object[]> rows;
+        do {
+            // Sent rows carry the time of the delivery in next_retry_at
+            rows = jdbcTemplate.query("SELECT id, next_retry_at FROM outbound_queue WHERE status = '" + SENT + "' "
+                    + "AND (next_retry_at > ? OR (next_retry_at = ? AND id > ?)) ORDER BY next_retry_at, id "
+                    + "LIMIT " + MAX_ROWS_PER_TICK,
+                    (rs, i) -> new Object[] { rs.getLong(1), rs.getTimestamp(2) },
+                    after, after, afterId);
+            for (Object[] row : rows) {
+                long id = (Long) row[0];
+                after = (Timestamp) row[1];
+                afterId = id;
+                if (recentSent.putIfAbsent(id, after.getTime()) == null) {
+                    sent.add(after.getTime() / 60_000, null, 1);
+                    sentTotal++;
+                }
+            }
+        } while (rows.size() == MAX_ROWS_PER_TICK);
+    }
+
+    static String domainOf(String sender) {
+        if (sender == null) {
+            return null;
+        }
+        int at = sender.lastIndexOf('@');
+        if (at < 0) {
+            return null;
+        }
+        int end = sender.indexOf('>', at);
+        return sender.substring(at + 1, end < 0 ? sender.length() : end).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+
+    private static final class RecentEmail {
+        private final long receivedAt;
+        private final Long userId;
+        private final long sizeBytes;
+
+        private RecentEmail(long receivedAt, Long userId, long sizeBytes) {
+            this.receivedAt = receivedAt;
+            this.userId = userId;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
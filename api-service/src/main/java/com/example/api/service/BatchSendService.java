@@ -0,0 +1,309 @@
+package com.example.api.service;
+
+import com.example.api.dto.BatchEmailItem;
+import com.example.api.dto.BatchItemResult;
+import com.example.api.dto.BatchSummary;
+import com.example.api.dto.EmailTemplate;
+import com.example.common.entity.OutboundQueue;
+import com.example.common.persistence.BatchPersister;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MailDateFormat;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Queues large numbers of messages from a streamed NDJSON body.
+ *
+ * The shared template body is rendered into its MIME form once; each
+ * recipient only adds its own header block. Queue rows are written with JDBC
+ * batch inserts through {@link BatchPersister}, one transaction per chunk.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchSendService {
+
+    private static final String MAIL_DOMAIN = "devprabhakar.in";
+
+    private final BatchPersister batchPersister;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JavaMailSender javaMailSender;
+    private final ObjectMapper objectMapper;
+
+    @Value("${batch.send.chunk.size:500}")
+    private int chunkSize;
+
+    /**
+     * Reads the NDJSON body and queues one message per recipient. Results are
+     * handed to {@code results} after every chunk so callers can stream them.
+     */
+    public BatchSummary send(String username, InputStream body, Consumer<List<BatchItemResult>> results)
+            throws IOException {
+        Batch batch = new Batch(username, results);
+        long line = 0;
+        try (MappingIterator<BatchEmailItem> items = objectMapper.readerFor(BatchEmailItem.class).readValues(body)) {
+            while (true) {
+                BatchEmailItem item;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    line++;
+                    item = items.nextValue();
+                } catch (JsonProcessingException e) {
+                    // The stream cannot be resynchronised after a malformed line
+                    batch.fail(line, null, null, "Malformed line: " + e.getOriginalMessage());
+                    break;
+                }
+                batch.add(line, item);
+            }
+        }
+        batch.flush();
+        batch.summary.setLines(line);
+        log.info("Batch from {} finished: {} queued, {} duplicates, {} failed", username,
+                batch.summary.getQueued(), batch.summary.getDuplicates(), batch.summary.getFailed());
+        return batch.summary;
+    }
+
+    private byte[] renderBodyPart(String body, boolean html) throws MessagingException, IOException {
+        MimeMessage part = javaMailSender.createMimeMessage();
+        part.setText(body != null ? body : "", StandardCharsets.UTF_8.name(), html ? "html" : "plain");
+        part.saveChanges();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        // Per-recipient headers are prepended by the caller
+        part.writeTo(os, new String[] { "Message-ID", "Date" });
+        return os.toByteArray();
+    }
+
+    private static final class PendingRow {
+        private final long line;
+        private final String recipient;
+        private final String clientKey;
+        private final String storedKey;
+        private final byte[] emailData;
+
+        private PendingRow(long line, String recipient, String clientKey, String storedKey, byte[] emailData) {
+            this.line = line;
+            this.recipient = recipient;
+            this.clientKey = clientKey;
+            this.storedKey = storedKey;
+            this.emailData = emailData;
+        }
+    }
+
+    private final class Batch {
+        private final String username;
+        private final String from;
+        private final Consumer<List<BatchItemResult>> sink;
+        private final BatchSummary summary = new BatchSummary();
+        private final MailDateFormat dateFormat = new MailDateFormat();
+        private final List<PendingRow> pending = new ArrayList<>();
+        private final List<BatchItemResult> results = new ArrayList<>();
+
+        private MessageTemplate subjectTemplate;
+        private MessageTemplate bodyTemplate;
+        private boolean html = true;
+        private byte[] sharedBodyPart;
+
+        private Batch(String username, Consumer<List<BatchItemResult>> sink) {
+            this.username = username;
+            this.from = username + "@" + MAIL_DOMAIN;
+            this.sink = sink;
+        }
+
+        private void add(long line, BatchEmailItem item) {
+            if (item.getTemplate() != null) {
+                useTemplate(item.getTemplate());
+            }
+            List<String> recipients = item.getRecipients() != null ? item.getRecipients()
+                    : item.getTo() != null ? List.of(item.getTo()) : List.of();
+            if (recipients.isEmpty()) {
+                if (item.getTemplate() == null) {
+                    fail(line, null, item.getIdempotencyKey(), "No recipient");
+                }
+                return;
+            }
+
+            boolean ownContent = item.getBody() != null || item.getSubject() != null;
+            if (!ownContent && bodyTemplate == null) {
+                fail(line, null, item.getIdempotencyKey(), "No template or body");
+                return;
+            }
+
+            for (String recipient : recipients) {
+                String clientKey = item.getIdempotencyKey();
+                String storedKey = null;
+                if (clientKey != null) {
+                    storedKey = username + ":" + clientKey + (recipients.size() > 1 ? ":" + recipient : "");
+                }
+                try {
+                    new InternetAddress(recipient, true);
+                    byte[] emailData = ownContent
+                            ? render(recipient, item.getSubject(), renderBodyPart(item.getBody(), html))
+                            : render(recipient, subjectTemplate.render(item.getVars()), bodyPart(item.getVars()));
+                    pending.add(new PendingRow(line, recipient, clientKey, storedKey, emailData));
+                } catch (AddressException e) {
+                    fail(line, recipient, clientKey, "Invalid recipient address");
+                } catch (MessagingException | IOException e) {
+                    fail(line, recipient, clientKey, "Failed to render message: " + e.getMessage());
+                }
+                if (pending.size() >= chunkSize) {
+                    flush();
+                }
+            }
+        }
+
+        private void useTemplate(EmailTemplate template) {
+            subjectTemplate = MessageTemplate.compile(template.getSubject());
+            bodyTemplate = MessageTemplate.compile(template.getBody());
+            html = template.isHtml();
+            sharedBodyPart = null;
+        }
+
+        private byte[] bodyPart(Map<String, String> vars) throws MessagingException, IOException {
+            if (bodyTemplate.hasVariables()) {
+                return renderBodyPart(bodyTemplate.render(vars), html);
+            }
+            if (sharedBodyPart == null) {
+                sharedBodyPart = renderBodyPart(bodyTemplate.render(null), html);
+            }
+            return sharedBodyPart;
+        }
+
+        private byte[] render(String recipient, String subject, byte[] bodyPart) throws IOException {
+            StringBuilder headers = new StringBuilder(256);
+            headers.append("From: ").append(from).append("\r\n");
+            headers.append("To: ").append(recipient).append("\r\n");
+            headers.append("Subject: ")
+                    .append(MimeUtility.fold(9, MimeUtility.encodeText(subject != null ? subject : "",
+                            StandardCharsets.UTF_8.name(), null)))
+                    .append("\r\n");
+            headers.append("Date: ").append(dateFormat.format(new Date())).append("\r\n");
+            headers.append("Message-ID: <").append(UUID.randomUUID()).append('@').append(MAIL_DOMAIN)
+                    .append(">\r\n");
+            byte[] head = headers.toString().getBytes(StandardCharsets.US_ASCII);
+            byte[] message = new byte[head.length + bodyPart.length];
+            System.arraycopy(head, 0, message, 0, head.length);
+            System.arraycopy(bodyPart, 0, message, head.length, bodyPart.length);
+            return message;
+        }
+
+        private void fail(long line, String recipient, String key, String error) {
+            summary.setFailed(summary.getFailed() + 1);
+            results.add(new BatchItemResult(line, recipient, key, BatchItemResult.FAILED, error));
+        }
+
+        private void flush() {
+            if (!pending.isEmpty()) {
+                write(pending);
+                pending.clear();
+            }
+            if (!results.isEmpty()) {
+                sink.accept(List.copyOf(results));
+                results.clear();
+            }
+        }
+
+        private void write(List<PendingRow> rows) {
+            Set<String> existing = existingKeys(rows);
+            List<PendingRow> inserts = new ArrayList<>(rows.size());
+            for (PendingRow row : rows) {
+                if (row.storedKey != null && !existing.add(row.storedKey)) {
+                    summary.setDuplicates(summary.getDuplicates() + 1);
+                    results.add(new BatchItemResult(row.line, row.recipient, row.clientKey,
+                            BatchItemResult.DUPLICATE, null));
+                } else {
+                    inserts.add(row);
+                }
+            }
+            if (inserts.isEmpty()) {
+                return;
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    batchPersister.persistAll(inserts.stream().map(row -> queueRow(row, now)).toList());
+                    batchPersister.flush();
+                });
+                for (PendingRow row : inserts) {
+                    queued(row);
+                }
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent batch claimed one of the keys; fall back to row-by-row for this chunk
+                for (PendingRow row : inserts) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> {
+                            batchPersister.persistAll(List.of(queueRow(row, now)));
+                            batchPersister.flush();
+                        });
+                        queued(row);
+                    } catch (DataIntegrityViolationException duplicate) {
+                        summary.setDuplicates(summary.getDuplicates() + 1);
+                        results.add(new BatchItemResult(row.line, row.recipient, row.clientKey,
+                                BatchItemResult.DUPLICATE, null));
+                    }
+                }
+            }
+        }
+
+        private void queued(PendingRow row) {
+            summary.setQueued(summary.getQueued() + 1);
+            results.add(new BatchItemResult(row.line, row.recipient, row.clientKey, BatchItemResult.QUEUED, null));
+        }
+
+        private OutboundQueue queueRow(PendingRow row, LocalDateTime now) {
+            OutboundQueue queueRow = new OutboundQueue();
+            queueRow.setSender(username);
+            queueRow.setRecipient(row.recipient);
+            queueRow.setEmailData(row.emailData);
+            queueRow.setNextRetryAt(now);
+            queueRow.setCreatedAt(now);
+            queueRow.setIdempotencyKey(row.storedKey);
+            return queueRow;
+        }
+
+        private Set<String> existingKeys(List<PendingRow> rows) {
+            List<String> keys = new ArrayList<>();
+            for (PendingRow row : rows) {
+                if (row.storedKey != null) {
+                    keys.add(row.storedKey);
+                }
+            }
+            if (keys.isEmpty()) {
+                return new HashSet<>();
+            }
+            return new HashSet<>(namedParameterJdbcTemplate.queryForList(
+                    "SELECT idempotency_key FROM outbound_queue WHERE idempotency_key IN (:keys)",
+                    Map.of("keys", keys), String.class));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.api.service;
+
+import com.example.api.dto.BulkEmailRequest;
+import com.example.api.dto.BulkEmailResult;
+import com.example.common.entity.MailEvent;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.FolderRepository;
+import com.example.common.repository.MailEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Applies one action to many of a user's emails.
+ *
+ * The selection is processed in chunks of {@code bulk.chunk.size} ids, each
+ * in its own transaction: the chunk's rows are locked, aggregated per folder
+ * for the counter deltas, and changed with a single UPDATE or DELETE. Every
+ * statement is restricted to the user's rows, and rows already in the
+ * requested state are skipped so counters and results only reflect real
+ * changes.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkEmailService {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FolderRepository folderRepository;
+    private final FolderCounterRepository folderCounterRepository;
+    private final MailEventRepository mailEventRepository;
+
+    @Value("${bulk.chunk.size:1000}")
+    private int chunkSize;
+
+    /**
+     * @throws IllegalArgumentException if the request is incomplete or the target folder is not the user's
+     */
+    public BulkEmailResult apply(Long userId, BulkEmailRequest request) {
+        BulkEmailRequest.Action action = request.getAction();
+        if (action == null) {
+            throw new IllegalArgumentException("action is required");
+        }
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        if (!byIds && request.getFolderId() == null && request.getFrom() == null && request.getTo() == null) {
+            throw new IllegalArgumentException("ids or a folderId/from/to filter is required");
+        }
+        if (action == BulkEmailRequest.Action.MOVE && (request.getTargetFolderId() == null
+                || folderRepository.findByIdAndUser_Id(request.getTargetFolderId(), userId).isEmpty())) {
+            throw new IllegalArgumentException("targetFolderId must be one of your folders");
+        }
+
+        long affected = 0;
+        if (byIds) {
+            List<Long> ids = new ArrayList<>(new TreeSet<>(request.getIds()));
+            for (int i = 0; i < ids.size(); i += chunkSize) {
+                List<Long> chunk = ids.subList(i, Math.min(i + chunkSize, ids.size()));
+                affected += transactionTemplate.execute(status -> applyChunk(userId, request, chunk, 0).size());
+            }
+        } else {
+            long after = 0;
+            while (true) {
+                long cursor = after;
+                List<Long> changed = transactionTemplate.execute(status -> applyChunk(userId, request, null, cursor));
+                if (changed.isEmpty()) {
+                    break;
+                }
+                affected += changed.size();
+                after = changed.get(changed.size() - 1);
+            }
+        }
+        log.info("Bulk {} by user {} changed {} emails", action, userId, affected);
+        return new BulkEmailResult(action, affected);
+    }
+
+    /** Changes up to one chunk of emails and returns their ids in ascending order. */
+    private List<Long> applyChunk(Long userId, BulkEmailRequest request, List<Long> ids, long after) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("limit", chunkSize);
+        StringBuilder select = new StringBuilder("SELECT id FROM emails WHERE user_id = :userId");
+        if (ids != null) {
+            select.append(" AND id IN (:ids)");
+            params.addValue("ids", ids);
+        } else {
+            select.append(" AND id > :after");
+            params.addValue("after", after);
+            if (request.getFolderId() != null) {
+                select.append(" AND folder_id = :folderId");
+                params.addValue("folderId", request.getFolderId());
+            }
+            if (request.getFrom() != null) {
+                select.append(" AND received_at >= :from");
+                params.addValue("from", Timestamp.valueOf(request.getFrom()));
+            }
+            if (request.getTo() != null) {
+                select.append(" AND received_at < :to");
+                params.addValue("to", Timestamp.valueOf(request.getTo()));
+            }
+        }
+        switch (request.getAction()) {
+            case MARK_READ -> select.append(" AND COALESCE(is_read, FALSE) = FALSE");
+            case MARK_UNREAD -> select.append(" AND is_read = TRUE");
+            case MOVE -> {
+                select.append(" AND (folder_id IS NULL OR folder_id <> :target)");
+                params.addValue("target", request.getTargetFolderId());
+            }
+            default -> {
+            }
+        }
+        select.append(" ORDER BY id LIMIT :limit FOR UPDATE");
+
+        List<Long> locked = namedParameterJdbcTemplate.queryForList(select.toString(), params, Long.class);
+        if (locked.isEmpty()) {
+            return locked;
+        }
+        MapSqlParameterSource chunk = new MapSqlParameterSource("ids", locked)
+                .addValue("target", request.getTargetFolderId());
+        List<FolderTotals> totals = namedParameterJdbcTemplate.query("SELECT folder_id, COUNT(*) AS total, "
+                + "SUM(CASE WHEN COALESCE(is_read, FALSE) THEN 0 ELSE 1 END) AS unread, "
+                + "COALESCE(SUM(size_bytes), 0) AS size FROM emails WHERE id IN (:ids) AND folder_id IS NOT NULL "
+                // Counter rows are updated in folder id order, so concurrent changes cannot deadlock
+                + "GROUP BY folder_id ORDER BY folder_id", chunk,
+                (rs, rowNum) -> new FolderTotals(rs.getLong("folder_id"), rs.getLong("total"), rs.getLong("unread"),
+                        rs.getLong("size")));
+
+        switch (request.getAction()) {
+            case MARK_READ -> {
+                namedParameterJdbcTemplate.update("UPDATE emails SET is_read = TRUE WHERE id IN (:ids)", chunk);
+                for (FolderTotals t : totals) {
+                    changed(userId, t.folderId, 0, -t.unread, 0);
+                }
+            }
+            case MARK_UNREAD -> {
+                namedParameterJdbcTemplate.update("UPDATE emails SET is_read = FALSE WHERE id IN (:ids)", chunk);
+                for (FolderTotals t : totals) {
+                    changed(userId, t.folderId, 0, t.total - t.unread, 0);
+                }
+            }
+            case MOVE -> {
+                chunk.addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+                namedParameterJdbcTemplate.update("UPDATE emails SET folder_id = :target, folder_changed_at = :now "
+                        + "WHERE id IN (:ids)", chunk);
+                long total = 0;
+                long unread = 0;
+                long size = 0;
+                for (FolderTotals t : totals) {
+                    total += t.total;
+                    unread += t.unread;
+                    size += t.size;
+                }
+                // Emails without a folder were not counted anywhere before
+                long unfiled = locked.size() - total;
+                if (unfiled > 0) {
+                    FolderTotals moved = namedParameterJdbcTemplate.queryForObject("SELECT COUNT(*) AS total, "
+                            + "SUM(CASE WHEN COALESCE(is_read, FALSE) THEN 0 ELSE 1 END) AS unread, "
+                            + "COALESCE(SUM(size_bytes), 0) AS size FROM emails WHERE id IN (:ids)", chunk,
+                            (rs, rowNum) -> new FolderTotals(null, rs.getLong("total"), rs.getLong("unread"),
+                                    rs.getLong("size")));
+                    total = moved.total;
+                    unread = moved.unread;
+                    size = moved.size;
+                }
+                // The target among the sources, in folder id order
+                boolean targetDone = false;
+                for (FolderTotals t : totals) {
+                    if (!targetDone && t.folderId > request.getTargetFolderId()) {
+                        changed(userId, request.getTargetFolderId(), total, unread, size);
+                        targetDone = true;
+                    }
+                    changed(userId, t.folderId, -t.total, -t.unread, -t.size);
+                }
+                if (!targetDone) {
+                    changed(userId, request.getTargetFolderId(), total, unread, size);
+                }
+            }
+            case DELETE -> {
+                namedParameterJdbcTemplate.update("DELETE FROM attachments WHERE email_id IN (:ids)", chunk);
+                namedParameterJdbcTemplate.update("DELETE FROM raw_messages WHERE email_id IN (:ids)", chunk);
+                namedParameterJdbcTemplate.update("DELETE FROM emails WHERE id IN (:ids)", chunk);
+                for (FolderTotals t : totals) {
+                    changed(userId, t.folderId, -t.total, -t.unread, -t.size);
+                }
+            }
+        }
+        return locked;
+    }
+
+    private void changed(Long userId, Long folderId, long total, long unread, long size) {
+        folderCounterRepository.applyDelta(folderId, total, unread, size);
+        mailEventRepository.record(userId, MailEvent.FOLDER_COUNTERS, null, folderId);
+    }
+
+    private static final class FolderTotals {
+        private final Long folderId;
+        private final long total;
+        private final long unread;
+        private final long size;
+
+        private FolderTotals(Long folderId, long total, long unread, long size) {
+            this.folderId = folderId;
+            this.total = total;
+            this.unread = unread;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.api.service;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A stored blob of known length that is read lazily in fixed-size chunks.
+ *
+ * Returned from controllers as a {@code ResponseEntity<Resource>}, Spring MVC
+ * answers {@code Range} requests with 206 responses and uses {@link InputStream#skip}
+ * to reach the first requested byte, which here only moves the read position
+ * instead of fetching the skipped bytes. At most one chunk is held in memory.
+ */
+public class ChunkedBlobResource extends AbstractResource {
+
+    /** Reads {@code length} bytes starting at the 1-based {@code offset}. */
+    @FunctionalInterface
+    public interface ChunkReader {
+        byte[] read(long offset, int length);
+    }
+
+    private final String description;
+    private final long length;
+    private final int chunkSize;
+    private final ChunkReader reader;
+
+    public ChunkedBlobResource(String description, long length, int chunkSize, ChunkReader reader) {
+        this.description = description;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.reader = reader;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ChunkInputStream();
+    }
+
+    private final class ChunkInputStream extends InputStream {
+        private long position;
+        private byte[] chunk = new byte[0];
+        private int chunkPosition;
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[chunkPosition++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(count, chunk.length - chunkPosition);
+            System.arraycopy(chunk, chunkPosition, buffer, offset, n);
+            chunkPosition += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long buffered = chunk.length - chunkPosition;
+            if (n <= buffered) {
+                chunkPosition += (int) Math.max(n, 0);
+                return Math.max(n, 0);
+            }
+            long skipped = Math.min(n, buffered + (length - position));
+            position += skipped - buffered;
+            chunk = new byte[0];
+            chunkPosition = 0;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - chunkPosition;
+        }
+
+        private boolean fill() throws IOException {
+            if (chunkPosition < chunk.length) {
+                return true;
+            }
+            if (position >= length) {
+                return false;
+            }
+            byte[] next = reader.read(position + 1, (int) Math.min(chunkSize, length - position));
+            if (next == null || next.length == 0) {
+                throw new IOException(description + " ended at byte " + position + " of " + length);
+            }
+            chunk = next;
+            chunkPosition = 0;
+            position += next.length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.api.service;
+
+import com.example.api.dto.CursorPage;
+import com.example.common.dto.EmailSummary;
+import com.example.common.entity.Email;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mailbox search over subject, sender, recipients and body.
+ *
+ * On PostgreSQL the index is a stored generated {@code tsvector} column on
+ * {@code emails} with a GIN index on the owner and the vector, both created
+ * by {@code database/init.sql}, so every insert or update of a message
+ * maintains it without a separate indexing step. Subject matches outrank address matches, which outrank body
+ * matches. Matches are ranked with {@code ts_rank} and paged by
+ * {@code (rank, id)}. Other databases (H2 in tests), or a schema without the
+ * column, fall back to a substring match with every row ranked equally.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailSearchService {
+
+    private static final String TEXT_CONFIG = "'simple'";
+
+    private static final String SUMMARY_COLUMNS = "e.id, e.sender, e.subject, "
+            + "COALESCE(e.snippet, SUBSTRING(e.body_text, 1, " + Email.SNIPPET_LENGTH + ")) AS snippet, "
+            + "e.received_at, e.size_bytes, e.is_read, "
+            + "EXISTS (SELECT 1 FROM attachments a WHERE a.email_id = e.id) AS has_attachments";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private boolean fullText;
+
+    @PostConstruct
+    void init() throws SQLException {
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            if (metaData.getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres")) {
+                try (ResultSet column = metaData.getColumns(null, null, "emails", "search_vector")) {
+                    fullText = column.next();
+                }
+                if (!fullText) {
+                    log.warn("emails.search_vector is missing; add it and its index as in database/init.sql");
+                }
+            }
+        }
+        log.info("Mailbox search uses {}", fullText ? "PostgreSQL full-text index" : "substring matching");
+    }
+
+    /**
+     * Returns one page of the user's emails matching {@code query}, best match
+     * first, optionally limited to a folder and a {@code [from, to)} range of
+     * received times.
+     */
+    public CursorPage<EmailSummary> search(long userId, String query, Long folderId, LocalDateTime from,
+            LocalDateTime to, SearchCursor after, int size) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("limit", size + 1);
+
+        StringBuilder matches = new StringBuilder("SELECT ").append(SUMMARY_COLUMNS);
+        if (fullText) {
+            matches.append(", ts_rank(e.search_vector, q) AS rank FROM emails e, websearch_to_tsquery(")
+                    .append(TEXT_CONFIG).append(", :query) q WHERE e.user_id = :userId AND e.search_vector @@ q");
+            params.addValue("query", query);
+        } else {
+            matches.append(", CAST(0 AS REAL) AS rank FROM emails e WHERE e.user_id = :userId AND ("
+                    + "LOWER(e.subject) LIKE :pattern ESCAPE '\\' OR LOWER(e.sender) LIKE :pattern ESCAPE '\\' "
+                    + "OR LOWER(e.recipients) LIKE :pattern ESCAPE '\\' OR LOWER(e.body_text) LIKE :pattern ESCAPE '\\')");
+            params.addValue("pattern", "%" + query.toLowerCase(Locale.ROOT)
+                    .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        if (folderId != null) {
+            matches.append(" AND e.folder_id = :folderId");
+            params.addValue("folderId", folderId);
+        }
+        if (from != null) {
+            matches.append(" AND e.received_at >= :from");
+            params.addValue("from", Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            matches.append(" AND e.received_at < :to");
+            params.addValue("to", Timestamp.valueOf(to));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(matches).append(") m");
+        if (after != null) {
+            sql.append(" WHERE m.rank < CAST(:rank AS REAL) OR (m.rank = CAST(:rank AS REAL) AND m.id < :id)");
+            params.addValue("rank", after.getRank()).addValue("id", after.getId());
+        }
+        sql.append(" ORDER BY m.rank DESC, m.id DESC LIMIT :limit");
+
+        List<Ranked> rows = namedParameterJdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> {
+            Timestamp receivedAt = rs.getTimestamp("received_at");
+            EmailSummary summary = new EmailSummary(rs.getLong("id"), rs.getString("sender"),
+                    rs.getString("subject"), rs.getString("snippet"),
+                    receivedAt != null ? receivedAt.toLocalDateTime() : null,
+                    rs.getObject("size_bytes", Long.class), rs.getBoolean("is_read"),
+                    rs.getBoolean("has_attachments"));
+            return new Ranked(summary, rs.getFloat("rank"));
+        });
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            Ranked last = rows.get(size - 1);
+            nextCursor = new SearchCursor(last.rank, last.summary.getId()).encode();
+        }
+        return new CursorPage<>(rows.stream().map(r -> r.summary).toList(), nextCursor, null);
+    }
+
+    private static final class Ranked {
+        private final EmailSummary summary;
+        private final float rank;
+
+        private Ranked(EmailSummary summary, float rank) {
+            this.summary = summary;
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.api.service;
+
+import com.example.api.dto.FolderTreeNode;
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.repository.FolderRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Users' folder hierarchies, read with one query each and cached. Entries
+ * are evicted by folder changes on this node right away, and on every node
+ * when {@link ReferenceDataCache} polls the change; the TTL is a backstop.
+ */
+@Service
+public class FolderTreeService {
+
+    private final FolderRepository folderRepository;
+    private final Cache<Long, List<FolderTreeNode>> trees;
+
+    public FolderTreeService(FolderRepository folderRepository, ReferenceDataCache referenceDataCache,
+            @Value("${folder.tree.cache.size:10000}") int cacheSize,
+            @Value("${folder.tree.cache.ttl.seconds:300}") long cacheTtlSeconds) {
+        this.folderRepository = folderRepository;
+        this.trees = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
+        referenceDataCache.onFoldersChanged(this::evict);
+    }
+
+    /** The user's top-level folders with their subfolders, sorted by name. */
+    public List<FolderTreeNode> tree(Long userId) {
+        return trees.get(userId, this::load);
+    }
+
+    public void evict(Long userId) {
+        trees.invalidate(userId);
+    }
+
+    private List<FolderTreeNode> load(Long userId) {
+        List<FolderRepository.FolderRow> rows = folderRepository.findRowsByUser(userId);
+        Map<Long, FolderTreeNode> nodes = new HashMap<>(rows.size() * 2);
+        for (FolderRepository.FolderRow row : rows) {
+            nodes.put(row.getId(), new FolderTreeNode(row.getId(), row.getName()));
+        }
+        List<FolderTreeNode> roots = new ArrayList<>();
+        // Rows come sorted by name, so children end up sorted too
+        for (FolderRepository.FolderRow row : rows) {
+            FolderTreeNode parent = row.getParentId() != null ? nodes.get(row.getParentId()) : null;
+            (parent != null ? parent.getChildren() : roots).add(nodes.get(row.getId()));
+        }
+        return roots;
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.api.service;
+
+import com.example.api.dto.MailEventData;
+import com.example.common.entity.MailEvent;
+import com.example.common.event.MailEventTail;
+import com.example.common.repository.EmailRepository;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes mailbox events to users' open Server-Sent Event streams.
+ *
+ * Events are rows in {@code mail_events}, written by whichever service made
+ * the change. On PostgreSQL an insert trigger sends {@code userId:eventId} on
+ * the {@code mail_events} channel at commit, and one LISTEN connection per
+ * node wakes the hub; other databases are polled. An event is only loaded
+ * when the user has a stream on this node, and idle streams hold no thread,
+ * just the emitter and a periodic heartbeat. Only the
+ * {@link MailEvent#CLIENT_TYPES} are sent and replayed; the other events in
+ * the table are the services' cache invalidations.
+ *
+ * Event ids are handed out at insert but events become visible at commit, so
+ * they do not always appear in id order. Polls and the catch-up after a LISTEN
+ * reconnect therefore re-read the events of the last
+ * {@code events.lookback.ms} through a {@link MailEventTail}, which drops the
+ * ones already delivered. A replay likewise also sends the events created
+ * within the lookback before the client's last event, so a client may get an
+ * event it already has again; events carry the current state, so applying one
+ * twice is harmless.
+ */
+@Service
+@Slf4j
+public class MailEventHub {
+
+    private static final String CHANNEL = "mail_events";
+    private static final int POLL_BATCH = 1000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final MailEventRepository mailEventRepository;
+    private final EmailRepository emailRepository;
+    private final FolderCounterRepository folderCounterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long streamTimeoutMs;
+    private final long heartbeatSeconds;
+    private final int replayLimit;
+    private final long pollIntervalMs;
+    private final long retentionHours;
+    private final long lookbackMs;
+
+    private final ConcurrentMap<Long, Set<SseEmitter>> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> daemon(r, "mail-events-scheduler"));
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(4, r -> daemon(r, "mail-events-dispatch"));
+
+    private volatile boolean running = true;
+    private MailEventTail tail;
+
+    public MailEventHub(DataSource dataSource, JdbcTemplate jdbcTemplate, MailEventRepository mailEventRepository,
+            EmailRepository emailRepository, FolderCounterRepository folderCounterRepository,
+            TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+            @Value("${events.stream.timeout.ms:1800000}") long streamTimeoutMs,
+            @Value("${events.heartbeat.seconds:25}") long heartbeatSeconds,
+            @Value("${events.replay.limit:500}") int replayLimit,
+            @Value("${events.poll.interval.ms:1000}") long pollIntervalMs,
+            @Value("${events.retention.hours:24}") long retentionHours,
+            @Value("${events.lookback.ms:60000}") long lookbackMs) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailEventRepository = mailEventRepository;
+        this.emailRepository = emailRepository;
+        this.folderCounterRepository = folderCounterRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.streamTimeoutMs = streamTimeoutMs;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.replayLimit = replayLimit;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retentionHours = retentionHours;
+        this.lookbackMs = lookbackMs;
+        Gauge.builder("mail.events.streams", streams, s -> s.values().stream().mapToInt(Set::size).sum())
+                .description("Open Server-Sent Event streams on this node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws SQLException {
+        boolean postgres;
+        try (Connection connection = dataSource.getConnection()) {
+            postgres = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres");
+        }
+        tail = new MailEventTail(mailEventRepository.findLastId(), lookbackMs);
+        if (postgres) {
+            installTrigger();
+            Thread listener = new Thread(this::listen, "mail-events-listener");
+            listener.setDaemon(true);
+            listener.start();
+        } else {
+            scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::prune, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        dispatcher.shutdownNow();
+        streams.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        streams.clear();
+    }
+
+    /**
+     * Opens a stream for the user. With {@code lastEventId} the events recorded
+     * after it, and those created within the lookback before it, are replayed
+     * first; if more than the replay limit were missed a single {@code RESYNC}
+     * event tells the client to reload instead.
+     */
+    public SseEmitter subscribe(Long userId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        streams.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        // Registered before replaying, so an event recorded meanwhile may arrive twice but is never lost
+        if (lastEventId != null) {
+            // From the primary, which has every committed event
+            List<MailEvent> missed = transactionTemplate.execute(status -> missedEvents(userId, lastEventId));
+            if (missed.size() > replayLimit) {
+                send(userId, emitter, SseEmitter.event().name("RESYNC").data(""));
+            } else {
+                for (MailEvent event : missed) {
+                    send(userId, emitter, toSse(event));
+                }
+            }
+        }
+        return emitter;
+    }
+
+    private List<MailEvent> missedEvents(Long userId, long lastEventId) {
+        PageRequest limit = PageRequest.of(0, replayLimit + 1);
+        return mailEventRepository.findById(lastEventId)
+                .map(last -> mailEventRepository.findByUserIdAfter(userId, MailEvent.CLIENT_TYPES, lastEventId,
+                        last.getCreatedAt().minusNanos(lookbackMs * 1_000_000), limit))
+                // Pruned, so long older than any transaction still to commit
+                .orElseGet(() -> mailEventRepository.findByUserIdAndTypeInAndIdGreaterThanOrderByIdAsc(userId,
+                        MailEvent.CLIENT_TYPES, lastEventId, limit));
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // Catch up on anything committed while not listening
+                poll();
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(10_000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        onNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("Lost LISTEN connection for mail events, reconnecting: {}", e.getMessage());
+                    sleep(5_000);
+                }
+            }
+        }
+    }
+
+    private void onNotification(String payload) {
+        int separator = payload.indexOf(':');
+        if (separator < 0) {
+            return;
+        }
+        Long userId = Long.valueOf(payload.substring(0, separator));
+        long eventId = Long.parseLong(payload.substring(separator + 1));
+        // Also tells the catch-up after a reconnect which events were delivered
+        if (tail.add(eventId) && streams.containsKey(userId)) {
+            // Read-write, so the read goes to the primary rather than a replica that may not have the event yet
+            dispatcher.execute(() -> {
+                MailEvent event = transactionTemplate.execute(status -> mailEventRepository.findById(eventId)
+                        .orElse(null));
+                if (event != null) {
+                    deliver(event);
+                }
+            });
+        }
+    }
+
+    private void poll() {
+        try {
+            List<MailEvent> events;
+            long after = tail.from();
+            do {
+                long from = after;
+                events = transactionTemplate.execute(status -> mailEventRepository.findByIdGreaterThanOrderByIdAsc(
+                        from, PageRequest.of(0, POLL_BATCH)));
+                for (MailEvent event : events) {
+                    after = event.getId();
+                    if (tail.add(event.getId()) && streams.containsKey(event.getUserId())) {
+                        dispatcher.execute(() -> deliver(event));
+                    }
+                }
+            } while (events.size() == POLL_BATCH);
+        } catch (RuntimeException e) {
+            log.warn("Polling mail events failed: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(MailEvent event) {
+        Set<SseEmitter> emitters = streams.get(event.getUserId());
+        if (emitters == null || !MailEvent.CLIENT_TYPES.contains(event.getType())) {
+            return;
+        }
+        // Current email and counters from the primary, as for the event itself
+        SseEmitter.SseEventBuilder sse = transactionTemplate.execute(status -> toSse(event));
+        for (SseEmitter emitter : emitters) {
+            send(event.getUserId(), emitter, sse);
+        }
+    }
+
+    private SseEmitter.SseEventBuilder toSse(MailEvent event) {
+        MailEventData data = new MailEventData(event.getEmailId(), event.getFolderId(), null, null);
+        if (event.getEmailId() != null) {
+            data.setEmail(emailRepository.findSummary(event.getEmailId()).orElse(null));
+        }
+        if (MailEvent.FOLDER_COUNTERS.equals(event.getType()) && event.getFolderId() != null) {
+            data.setCounters(folderCounterRepository.findById(event.getFolderId()).orElse(null));
+        }
+        return SseEmitter.event().id(String.valueOf(event.getId())).name(event.getType()).data(data);
+    }
+
+    private void heartbeat() {
+        streams.forEach((userId, emitters) -> emitters.forEach(
+                emitter -> send(userId, emitter, SseEmitter.event().comment("keep-alive"))));
+    }
+
+    private void send(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away
+            remove(userId, emitter);
+        }
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        streams.computeIfPresent(userId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private void prune() {
+        try {
+            Integer deleted = transactionTemplate.execute(status -> mailEventRepository
+                    .deleteOlderThan(LocalDateTime.now().minusHours(retentionHours)));
+            if (deleted != null && deleted > 0) {
+                log.info("Pruned {} mail events older than {} hours", deleted, retentionHours);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Pruning mail events failed: {}", e.getMessage());
+        }
+    }
+
+    private void installTrigger() {
+        // Same as init.sql, for databases created by Hibernate
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION notify_mail_event() RETURNS trigger AS $$ BEGIN "
+                + "PERFORM pg_notify('" + CHANNEL + "', NEW.user_id || ':' || NEW.id); RETURN NEW; END $$ "
+                + "LANGUAGE plpgsql");
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_trigger WHERE tgname = 'mail_events_notify'", Integer.class);
+        if (exists == null || exists == 0) {
+            jdbcTemplate.execute("CREATE TRIGGER mail_events_notify AFTER INSERT ON mail_events "
+                    + "FOR EACH ROW EXECUTE FUNCTION notify_mail_event()");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
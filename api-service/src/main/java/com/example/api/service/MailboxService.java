@@ -0,0 +1,204 @@
+package com.example.api.service;
+
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.entity.Email;
+import com.example.common.entity.Folder;
+import com.example.common.entity.FolderCounter;
+import com.example.common.entity.MailEvent;
+import com.example.common.repository.EmailRepository;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.FolderRepository;
+import com.example.common.repository.MailEventRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Changes to folders and the emails filed in them. Each change updates the
+ * folder counters and records the events for the user's clients in the same
+ * transaction, with the email row locked so concurrent requests on one email
+ * cannot count it twice. Folder changes also record the event that evicts
+ * the folder from the other nodes' entity caches.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MailboxService {
+
+    private final EmailRepository emailRepository;
+    private final FolderRepository folderRepository;
+    private final FolderCounterRepository folderCounterRepository;
+    private final MailEventRepository mailEventRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void createMissingCounters() {
+        // Folders created before counters existed are counted once
+        int created = transactionTemplate.execute(status -> folderCounterRepository.createMissing());
+        if (created > 0) {
+            log.info("Created counters for {} folders", created);
+        }
+    }
+
+    @Transactional
+    public Folder createFolder(Folder folder) {
+        Folder saved = folderRepository.save(folder);
+        folderCounterRepository.save(new FolderCounter(saved.getId(), 0, 0, 0));
+        referenceDataCache.folderChanged(saved.getUser().getId(), saved.getId());
+        return saved;
+    }
+
+    /**
+     * @return false if the user has no such folder
+     */
+    @Transactional
+    public boolean renameFolder(Long userId, Long folderId, String name) {
+        Optional<Folder> folder = folderRepository.findByIdAndUser_Id(folderId, userId);
+        folder.ifPresent(f -> {
+            f.setName(name);
+            referenceDataCache.folderChanged(userId, folderId);
+        });
+        return folder.isPresent();
+    }
+
+    /**
+     * Moves a folder under another of the user's folders, or to the top level
+     * when {@code parentId} is null.
+     *
+     * @return false if the user has no such folder or parent
+     * @throws IllegalArgumentException if the parent is the folder itself or one of its subfolders
+     */
+    @Transactional
+    public boolean moveFolder(Long userId, Long folderId, Long parentId) {
+        Optional<Folder> folder = folderRepository.findByIdAndUser_Id(folderId, userId);
+        Optional<Folder> parent = parentId != null ? folderRepository.findByIdAndUser_Id(parentId, userId)
+                : Optional.empty();
+        if (folder.isEmpty() || (parentId != null && parent.isEmpty())) {
+            return false;
+        }
+        if (parentId != null) {
+            Map<Long, Long> parents = new HashMap<>();
+            for (FolderRepository.FolderRow row : folderRepository.findRowsByUser(userId)) {
+                parents.put(row.getId(), row.getParentId());
+            }
+            for (Long id = parentId; id != null; id = parents.get(id)) {
+                if (id.equals(folderId)) {
+                    throw new IllegalArgumentException("A folder cannot be moved into itself or a subfolder");
+                }
+            }
+        }
+        folder.get().setParent(parent.orElse(null));
+        referenceDataCache.folderChanged(userId, folderId);
+        return true;
+    }
+
+    /**
+     * Checks that the folder could be deleted once its emails are gone, before
+     * they are purged.
+     *
+     * @return false if the user has no such folder
+     * @throws IllegalStateException if the folder has subfolders
+     */
+    @Transactional
+    public boolean checkDeletable(Long userId, Long folderId) {
+        if (folderRepository.findByIdAndUser_Id(folderId, userId).isEmpty()) {
+            return false;
+        }
+        if (folderRepository.existsByParent_Id(folderId)) {
+            throw new IllegalStateException("Folder has subfolders");
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the user has no such folder
+     * @throws IllegalStateException if the folder still has subfolders or emails
+     */
+    @Transactional
+    public boolean deleteFolder(Long userId, Long folderId) {
+        Optional<Folder> folder = folderRepository.findByIdAndUser_Id(folderId, userId);
+        if (folder.isEmpty()) {
+            return false;
+        }
+        if (folderRepository.existsByParent_Id(folderId) || emailRepository.existsByFolder_Id(folderId)) {
+            throw new IllegalStateException("Folder is not empty");
+        }
+        folderCounterRepository.deleteById(folderId);
+        folderRepository.delete(folder.get());
+        referenceDataCache.folderChanged(userId, folderId);
+        return true;
+    }
+
+    /**
+     * @return false if the user has no such email
+     */
+    @Transactional
+    public boolean setRead(Long userId, Long emailId, boolean read) {
+        Optional<Email> found = emailRepository.findForUpdate(emailId, userId);
+        if (found.isEmpty()) {
+            return false;
+        }
+        Email email = found.get();
+        if (email.isRead() != read) {
+            email.setRead(read);
+            Long folderId = email.getFolder() != null ? email.getFolder().getId() : null;
+            mailEventRepository.record(userId, MailEvent.FLAG_CHANGED, emailId, folderId);
+            if (folderId != null) {
+                folderCounterRepository.applyDelta(folderId, 0, read ? -1 : 1, 0);
+                mailEventRepository.record(userId, MailEvent.FOLDER_COUNTERS, null, folderId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the user has no such email or no such folder
+     */
+    @Transactional
+    public boolean move(Long userId, Long emailId, Long folderId) {
+        Optional<Folder> target = folderRepository.findByIdAndUser_Id(folderId, userId);
+        Optional<Email> found = emailRepository.findForUpdate(emailId, userId);
+        if (target.isEmpty() || found.isEmpty()) {
+            return false;
+        }
+        Email email = found.get();
+        if (email.getFolder() == null || !email.getFolder().getId().equals(folderId)) {
+            folderCounterRepository.moved(email, folderId);
+            countersChanged(userId, email);
+            email.setFolder(target.get());
+            email.setFolderChangedAt(LocalDateTime.now());
+            countersChanged(userId, email);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the user has no such email
+     */
+    @Transactional
+    public boolean delete(Long userId, Long emailId) {
+        Optional<Email> found = emailRepository.findForUpdate(emailId, userId);
+        if (found.isEmpty()) {
+            return false;
+        }
+        folderCounterRepository.removed(found.get());
+        countersChanged(userId, found.get());
+        emailRepository.delete(found.get());
+        return true;
+    }
+
+    private void countersChanged(Long userId, Email email) {
+        if (email.getFolder() != null) {
+            mailEventRepository.record(userId, MailEvent.FOLDER_COUNTERS, null, email.getFolder().getId());
+        }
+    }
+}
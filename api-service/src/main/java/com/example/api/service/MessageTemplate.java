@@ -0,0 +1,61 @@
+package com.example.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text with {@code {{name}}} placeholders, split into segments once so that
+ * rendering per recipient is a single pass over pre-parsed parts.
+ */
+public final class MessageTemplate {
+
+    private final List<String> literals;
+    private final List<String> variables;
+
+    private MessageTemplate(List<String> literals, List<String> variables) {
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    public static MessageTemplate compile(String text) {
+        if (text == null) {
+            return new MessageTemplate(List.of(""), Collections.emptyList());
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = text.indexOf("{{", position);
+            int close = open < 0 ? -1 : text.indexOf("}}", open + 2);
+            if (open < 0 || close < 0) {
+                literals.add(text.substring(position));
+                break;
+            }
+            literals.add(text.substring(position, open));
+            variables.add(text.substring(open + 2, close).trim());
+            position = close + 2;
+        }
+        return new MessageTemplate(literals, variables);
+    }
+
+    public boolean hasVariables() {
+        return !variables.isEmpty();
+    }
+
+    public String render(Map<String, String> values) {
+        if (variables.isEmpty()) {
+            return literals.get(0);
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < variables.size(); i++) {
+            out.append(literals.get(i));
+            String value = values != null ? values.get(variables.get(i)) : null;
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        return out.append(literals.get(variables.size())).toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.api.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts per minute over a fixed number of trailing minutes, optionally broken
+ * down by key. Buckets are reused as the window moves, so memory stays bounded
+ * by the window length and the distinct keys seen in it.
+ */
+final class MinuteWindow {
+
+    private final long[] minutes;
+    private final long[] counts;
+    private final Map<String, Long>[] keys;
+    private final int maxKeysPerMinute;
+
+    @SuppressWarnings("unchecked")
+    MinuteWindow(int length, int maxKeysPerMinute) {
+        this.minutes = new long[length];
+        this.counts = new long[length];
+        this.keys = new Map[length];
+        this.maxKeysPerMinute = maxKeysPerMinute;
+        for (int i = 0; i < length; i++) {
+            minutes[i] = -1;
+            keys[i] = new HashMap<>();
+        }
+    }
+
+    synchronized void add(long minute, String key, long count) {
+        int slot = slot(minute);
+        if (minutes[slot] > minute) {
+            // Older than the window
+            return;
+        }
+        if (minutes[slot] != minute) {
+            minutes[slot] = minute;
+            counts[slot] = 0;
+            keys[slot].clear();
+        }
+        counts[slot] += count;
+        if (key != null && (keys[slot].size() < maxKeysPerMinute || keys[slot].containsKey(key))) {
+            keys[slot].merge(key, count, Long::sum);
+        }
+    }
+
+    /** Total over minutes {@code from} to {@code to}, both inclusive. */
+    synchronized long count(long from, long to) {
+        long total = 0;
+        for (int i = 0; i < minutes.length; i++) {
+            if (minutes[i] >= from && minutes[i] <= to) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /** Per-key totals over minutes {@code from} to {@code to}, both inclusive. */
+    synchronized Map<String, Long> keys(long from, long to) {
+        Map<String, Long> totals = new HashMap<>();
+        for (int i = 0; i < minutes.length; i++) {
+            if (minutes[i] >= from && minutes[i] <= to) {
+                keys[i].forEach((key, count) -> totals.merge(key, count, Long::sum));
+            }
+        }
+        return totals;
+    }
+
+    private int slot(long minute) {
+        return (int) (minute % minutes.length);
+    }
+}
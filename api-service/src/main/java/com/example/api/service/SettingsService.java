@@ -0,0 +1,55 @@
+package com.example.api.service;
+
+import com.example.common.cache.SettingsCache;
+import com.example.common.entity.Settings;
+import com.example.common.entity.User;
+import com.example.common.repository.SettingsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Changes to user settings. Each change records the event that invalidates
+ * the other instances' settings caches in the same transaction, so the
+ * change and its invalidation commit together.
+ */
+@Service
+@RequiredArgsConstructor
+public class SettingsService {
+
+    private final SettingsRepository settingsRepository;
+    private final SettingsCache settingsCache;
+
+    /** Creates the default settings for a user who has none. */
+    @Transactional
+    public Settings createDefaults(User user) {
+        Settings settings = new Settings();
+        settings.setUser(user);
+        settings.setTheme("light");
+        settings.setNotificationsEnabled(true);
+        Settings saved = settingsRepository.save(settings);
+        settingsCache.changed(user.getId());
+        return saved;
+    }
+
+    /** Applies the theme and signature given, and the notification flag, creating the settings if needed. */
+    @Transactional
+    public Settings update(User user, Settings updated) {
+        Settings settings = settingsRepository.findByUser(user)
+                .orElseGet(() -> {
+                    Settings s = new Settings();
+                    s.setUser(user);
+                    return s;
+                });
+
+        if (updated.getTheme() != null)
+            settings.setTheme(updated.getTheme());
+        if (updated.getSignature() != null)
+            settings.setSignature(updated.getSignature());
+        settings.setNotificationsEnabled(updated.isNotificationsEnabled());
+
+        Settings saved = settingsRepository.save(settings);
+        settingsCache.changed(user.getId());
+        return saved;
+    }
+}
@@ -1,39 +1,89 @@
 package com.example.api.service;
 
+import com.example.common.cache.ReferenceDataCache;
 import com.example.common.entity.User;
 import com.example.common.repository.UserRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
+/**
+ * Users and their changes. Every change records the event that evicts the
+ * user from the other instances' caches in the same transaction, so the
+ * change and its eviction commit together.
+ */
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
     private final org.springframework.security.crypto.password.PasswordEncoder passwordEncoder;
+    private final ReferenceDataCache referenceDataCache;
 
     public UserService(UserRepository userRepository,
-            org.springframework.security.crypto.password.PasswordEncoder passwordEncoder) {
+            org.springframework.security.crypto.password.PasswordEncoder passwordEncoder,
+            ReferenceDataCache referenceDataCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.referenceDataCache = referenceDataCache;
     }
 
+    @Transactional
     public User register(String username, String password) {
         if (userRepository.findByUsername(username).isPresent()) {
             throw new RuntimeException("User already exists");
         }
-        return userRepository.save(User.builder()
+        User saved = userRepository.save(User.builder()
                 .username(username)
                 .password(passwordEncoder.encode(password))
                 .roles("USER")
                 .build());
+        // Other nodes may have cached the lookup that found no such user
+        referenceDataCache.userChanged(saved.getId());
+        return saved;
     }
 
-    public boolean login(String username, String password) {
-        Optional<User> user = userRepository.findByUsername(username);
-        return user.map(u -> passwordEncoder.matches(password, u.getPassword())).orElse(false);
+    /** Creates the user as given, encoding its password. */
+    @Transactional
+    public User createUser(User user) {
+        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        User saved = userRepository.save(user);
+        referenceDataCache.userChanged(saved.getId());
+        return saved;
     }
 
+    /**
+     * Applies the username and roles given.
+     *
+     * @throws java.util.NoSuchElementException if there is no such user
+     */
+    @Transactional
+    public User updateUser(Long id, User updates) {
+        User user = userRepository.findById(id).orElseThrow();
+        if (updates.getUsername() != null)
+            user.setUsername(updates.getUsername());
+        if (updates.getRoles() != null)
+            user.setRoles(updates.getRoles());
+        User saved = userRepository.save(user);
+        referenceDataCache.userChanged(saved.getId());
+        return saved;
+    }
+
+    /** Deletes the user if it exists. */
+    @Transactional
+    public void deleteUser(Long id) {
+        userRepository.findById(id).ifPresent(user -> {
+            userRepository.delete(user);
+            referenceDataCache.userChanged(user.getId());
+        });
+    }
+
+    public Optional<User> login(String username, String password) {
+        return userRepository.findByUsername(username)
+                .filter(u -> passwordEncoder.matches(password, u.getPassword()));
+    }
+
+    /** Served from the query cache, which every instance evicts on user changes. */
     public Optional<User> findByUsername(String username) {
         return userRepository.findByUsername(username);
     }
@@ -3,8 +3,23 @@ package com.example.api.controller;
 import com.example.api.dto.EmailRequest;
 import com.example.api.dto.FolderRequest;
 import com.example.api.dto.LoginRequest;
+import com.example.api.persistence.ReplicaRoutingDataSource;
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.entity.Email;
+import com.example.common.entity.MailEvent;
+import com.example.common.entity.OutboundQueue;
+import com.example.common.entity.RawMessage;
 import com.example.common.entity.Settings;
+import com.example.common.entity.User;
+import com.example.common.repository.EmailRepository;
+import com.example.common.repository.FolderRepository;
+import com.example.common.repository.MailQueueRepository;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.RawMessageRepository;
+import com.example.common.repository.SettingsRepository;
+import com.example.common.repository.UserRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -13,12 +28,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -33,7 +64,44 @@ public class ApiIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private RawMessageRepository rawMessageRepository;
+
+    @Autowired
+    private FolderRepository folderRepository;
+
+    @Autowired
+    private SettingsRepository settingsRepository;
+
+    @Autowired
+    private MailEventRepository mailEventRepository;
+
+    @Autowired
+    private MailQueueRepository mailQueueRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private static String jwtToken;
+    private static String adminToken;
 
     @Test
     @Order(1)
@@ -95,7 +163,9 @@ public class ApiIntegrationTest {
         mockMvc.perform(get("/api/folders")
                 .header("Authorization", "Bearer " + jwtToken))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].name").value("Work"));
+                .andExpect(jsonPath("$[0].name").value("Work"))
+                .andExpect(jsonPath("$[0].totalCount").value(0))
+                .andExpect(jsonPath("$[0].user").doesNotExist());
     }
 
     @Test
@@ -124,6 +194,421 @@ public class ApiIntegrationTest {
 
     @Test
     @Order(8)
+    public void testGetEmailsByCursor() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            emailRepository.save(Email.builder().sender("s@example.com").recipient("testuser@devprabhakar.in")
+                    .subject("Message " + i).body("Body\n  of message " + i).user(user).build());
+        }
+
+        MvcResult first = mockMvc.perform(get("/api/emails/cursor").param("limit", "2").param("includeTotal", "true")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].subject").value("Message 2"))
+                .andExpect(jsonPath("$.items[0].snippet").value("Body of message 2"))
+                .andExpect(jsonPath("$.items[0].body").doesNotExist())
+                .andExpect(jsonPath("$.total").value(3))
+                .andReturn();
+        String cursor = (String) objectMapper.readValue(first.getResponse().getContentAsString(), Map.class)
+                .get("nextCursor");
+
+        mockMvc.perform(get("/api/emails/cursor").param("limit", "2").param("cursor", cursor)
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].subject").value("Message 0"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist())
+                .andExpect(jsonPath("$.total").doesNotExist());
+    }
+
+    @Test
+    @Order(9)
+    public void testSearchEmails() throws Exception {
+        mockMvc.perform(get("/api/emails/search").param("q", "no such words")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(0));
+
+        mockMvc.perform(get("/api/emails/search").param("q", "message 1")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].subject").value("Message 1"));
+
+        mockMvc.perform(get("/api/emails/search").param("q", "message").param("limit", "2")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.nextCursor").exists());
+    }
+
+    @Test
+    @Order(10)
+    public void testGetRawEmail() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Email email = emailRepository.save(Email.builder().sender("s@example.com")
+                .recipient("testuser@devprabhakar.in").subject("Raw").user(user).build());
+        String raw = "Subject: Raw\r\n\r\nHello, world";
+        rawMessageRepository.save(new RawMessage(email.getId(), raw.getBytes(StandardCharsets.US_ASCII)));
+
+        MvcResult full = mockMvc.perform(get("/api/emails/" + email.getId() + "/raw")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(content().string(raw))
+                .andReturn();
+        String etag = full.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/emails/" + email.getId() + "/raw")
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("Range", "bytes=23-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("world"));
+
+        mockMvc.perform(get("/api/emails/" + email.getId() + "/raw")
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @Order(11)
+    public void testFolderCounters() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Long folderId = folderRepository.findByUser_Id(user.getId()).get(0).getId();
+        Email email = emailRepository.save(Email.builder().sender("s@example.com")
+                .recipient("testuser@devprabhakar.in").subject("Counted").body("12345").user(user).build());
+
+        mockMvc.perform(post("/api/emails/" + email.getId() + "/move").param("folderId", folderId.toString())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/folders").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[0].totalCount").value(1))
+                .andExpect(jsonPath("$[0].unreadCount").value(1))
+                .andExpect(jsonPath("$[0].sizeBytes").value(5));
+
+        Map<String, Boolean> read = Map.of("read", true);
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(patch("/api/emails/" + email.getId())
+                    .header("Authorization", "Bearer " + jwtToken)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(read)))
+                    .andExpect(status().isOk());
+        }
+        mockMvc.perform(get("/api/folders").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[0].totalCount").value(1))
+                .andExpect(jsonPath("$[0].unreadCount").value(0));
+
+        mockMvc.perform(delete("/api/emails/" + email.getId())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/folders").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[0].totalCount").value(0))
+                .andExpect(jsonPath("$[0].sizeBytes").value(0));
+    }
+
+    @Test
+    @Order(12)
+    public void testEventStream() throws Exception {
+        // Events recorded by the previous test are replayed from Last-Event-ID
+        MvcResult replay = mockMvc.perform(get("/api/events").header("Last-Event-ID", "0")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String replayed = replay.getResponse().getContentAsString();
+        assertTrue(replayed.contains("event:FLAG_CHANGED"), replayed);
+        assertTrue(replayed.contains("event:FOLDER_COUNTERS"), replayed);
+        // Registering and creating folders recorded cache invalidations, which clients never see
+        assertTrue(!replayed.contains("event:USER_CHANGED") && !replayed.contains("event:FOLDERS_CHANGED"), replayed);
+
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Email email = emailRepository.save(Email.builder().sender("s@example.com")
+                .recipient("testuser@devprabhakar.in").subject("Pushed").user(user).build());
+        MvcResult live = mockMvc.perform(get("/api/events").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(patch("/api/emails/" + email.getId())
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("read", true))))
+                .andExpect(status().isOk());
+        await().atMost(Duration.ofSeconds(5)).until(
+                () -> live.getResponse().getContentAsString().contains("\"subject\":\"Pushed\""));
+    }
+
+    @Test
+    @Order(13)
+    public void testFolderTree() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Long workId = folderRepository.findByUser_Id(user.getId()).get(0).getId();
+        FolderRequest child = new FolderRequest();
+        child.setName("Clients");
+        child.setParentId(workId);
+        mockMvc.perform(post("/api/folders")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(child)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/folders/tree").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("Work"))
+                .andExpect(jsonPath("$[0].children[0].name").value("Clients"))
+                .andExpect(jsonPath("$[0].user").doesNotExist());
+
+        Long clientsId = folderRepository.findByUser_Id(user.getId()).stream()
+                .filter(f -> f.getName().equals("Clients")).findFirst().orElseThrow().getId();
+        FolderRequest rename = new FolderRequest();
+        rename.setName("Customers");
+        mockMvc.perform(patch("/api/folders/" + clientsId)
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(rename)))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/folders/" + workId + "/move").param("parentId", clientsId.toString())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(delete("/api/folders/" + workId).header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/api/folders/" + clientsId + "/move")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/folders/tree").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].name").value("Customers"))
+                .andExpect(jsonPath("$[1].children").doesNotExist());
+
+        // Renamed on another node: the change reaches this node's tree through the event poll
+        jdbcTemplate.update("UPDATE folders SET name = 'Accounts' WHERE id = ?", clientsId);
+        referenceDataCache.folderChanged(user.getId(), clientsId);
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> mockMvc
+                .perform(get("/api/folders/tree").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[0].name").value("Accounts")));
+    }
+
+    @Test
+    @Order(14)
+    public void testBulkActions() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Long folderId = folderRepository.findByUser_Id(user.getId()).stream()
+                .filter(f -> f.getName().equals("Work")).findFirst().orElseThrow().getId();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(emailRepository.save(Email.builder().sender("s@example.com").recipient("testuser@devprabhakar.in")
+                    .subject("Bulk " + i).body("12").user(user).build()).getId());
+        }
+
+        mockMvc.perform(post("/api/emails/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("action", "MOVE", "ids", ids,
+                        "targetFolderId", folderId))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(5));
+        mockMvc.perform(post("/api/emails/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("action", "MARK_READ", "ids", ids.subList(0, 2)))))
+                .andExpect(jsonPath("$.affected").value(2));
+        mockMvc.perform(get("/api/folders").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[?(@.name == 'Work')].totalCount").value(5))
+                .andExpect(jsonPath("$[?(@.name == 'Work')].unreadCount").value(3))
+                .andExpect(jsonPath("$[?(@.name == 'Work')].sizeBytes").value(10));
+
+        mockMvc.perform(post("/api/emails/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("action", "DELETE", "folderId", folderId))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(5));
+        mockMvc.perform(get("/api/folders").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[?(@.name == 'Work')].totalCount").value(0))
+                .andExpect(jsonPath("$[?(@.name == 'Work')].unreadCount").value(0));
+
+        mockMvc.perform(post("/api/emails/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("action", "DELETE"))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(15)
+    public void testThreads() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Email root = emailRepository.save(Email.builder().sender("a@example.com").recipient("testuser@devprabhakar.in")
+                .subject("Lunch").body("Noon?").messageId("lunch-1@example.com").user(user).build());
+        root.setThreadId(root.getId());
+        emailRepository.save(root);
+        emailRepository.save(Email.builder().sender("b@example.com").recipient("testuser@devprabhakar.in")
+                .subject("Re: Lunch").body("Sure").messageId("lunch-2@example.com").threadId(root.getId())
+                .read(true).user(user).build());
+        emailRepository.save(Email.builder().sender("a@example.com").recipient("testuser@devprabhakar.in")
+                .subject("Re: Lunch").body("See you").messageId("lunch-3@example.com").threadId(root.getId())
+                .user(user).build());
+        // Delivered by a node with a later id block, but received before the reply above
+        Email late = emailRepository.save(Email.builder().sender("c@example.com")
+                .recipient("testuser@devprabhakar.in").subject("Re: Lunch").body("Count me in")
+                .messageId("lunch-4@example.com").threadId(root.getId()).read(true).user(user).build());
+        jdbcTemplate.update("UPDATE emails SET received_at = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusHours(1)), late.getId());
+
+        MvcResult first = mockMvc.perform(get("/api/threads").param("limit", "1")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].threadId").value(root.getId()))
+                .andExpect(jsonPath("$.items[0].snippet").value("See you"))
+                .andExpect(jsonPath("$.items[0].messageCount").value(4))
+                .andExpect(jsonPath("$.items[0].unreadCount").value(2))
+                .andReturn();
+        String cursor = (String) objectMapper.readValue(first.getResponse().getContentAsString(), Map.class)
+                .get("nextCursor");
+        mockMvc.perform(get("/api/threads").param("limit", "1").param("cursor", cursor)
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].threadId").value(not(root.getId().intValue())))
+                .andExpect(jsonPath("$.items[0].messageCount").value(1));
+
+        mockMvc.perform(get("/api/threads/" + root.getId()).header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[0].snippet").value("Count me in"));
+        mockMvc.perform(get("/api/threads/0").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Order(16)
+    public void testSendBatch() throws Exception {
+        String body = String.join("\n",
+                "{\"template\": {\"subject\": \"Hello {{name}}\", \"body\": \"<p>News</p>\"}}",
+                "{\"to\": \"a@example.com\", \"vars\": {\"name\": \"A\"}, \"idempotencyKey\": \"batch-1\"}",
+                "{\"recipients\": [\"b@example.com\", \"c@example.com\"], \"idempotencyKey\": \"batch-2\"}",
+                "{\"to\": \"a@example.com\", \"idempotencyKey\": \"batch-1\"}",
+                "{\"to\": \"not an address\"}");
+
+        MvcResult result = mockMvc.perform(post("/api/emails/batch")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType("application/x-ndjson")
+                .content(body))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().trim().split("\n");
+        Map<String, Object> summary = (Map<String, Object>) objectMapper.readValue(lines[lines.length - 1], Map.class)
+                .get("summary");
+        assertEquals(3, summary.get("queued"));
+        assertEquals(1, summary.get("duplicates"));
+        assertEquals(1, summary.get("failed"));
+
+        // Payloads are stored compressed and read back as MIME
+        List<byte[]> stored = jdbcTemplate.queryForList("SELECT email_data FROM outbound_queue", byte[].class);
+        assertEquals(4, stored.size());
+        stored.forEach(data -> assertTrue(data[0] == 0 || data[0] == 1, "format byte " + data[0]));
+        for (OutboundQueue row : mailQueueRepository.findAll()) {
+            String mime = new String(row.getEmailData(), StandardCharsets.UTF_8);
+            assertTrue(mime.contains("Subject: "), mime);
+        }
+    }
+
+    @Test
+    @Order(17)
+    public void testAdminStats() throws Exception {
+        Map<String, String> credentials = Map.of("username", "statsadmin", "password", "password123");
+        mockMvc.perform(post("/api/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(credentials)))
+                .andExpect(status().isOk());
+        User admin = userRepository.findByUsername("statsadmin").orElseThrow();
+        admin.setRoles("USER,ADMIN");
+        userRepository.save(admin);
+        MvcResult login = mockMvc.perform(post("/api/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(credentials)))
+                .andReturn();
+        adminToken = (String) objectMapper.readValue(login.getResponse().getContentAsString(), Map.class)
+                .get("token");
+
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        emailRepository.save(Email.builder().sender("News <news@Stats.example>").recipient("testuser@devprabhakar.in")
+                .subject("Stats").body("hello").user(user).build());
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> mockMvc
+                .perform(get("/api/admin/stats").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users").value(2))
+                .andExpect(jsonPath("$.queue.PENDING").value(4))
+                .andExpect(jsonPath("$.received.lastHour").value(greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.topSenderDomains[?(@.domain == 'stats.example')].messages").value(1))
+                .andExpect(jsonPath("$.topStorage[0].username").value("testuser")));
+    }
+
+    @Test
+    @Order(18)
+    public void testAdminUserListing() throws Exception {
+        // A plain user's token is refused on every admin endpoint
+        for (String path : List.of("/api/admin/users", "/api/admin/users/page", "/api/admin/users/stream",
+                "/api/admin/stats")) {
+            mockMvc.perform(get(path).header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isForbidden());
+        }
+
+        MvcResult first = mockMvc.perform(get("/api/admin/users/page").param("limit", "1")
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].username").value("testuser"))
+                .andExpect(jsonPath("$.items[0].password").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").exists())
+                .andReturn();
+        String cursor = (String) objectMapper.readValue(first.getResponse().getContentAsString(), Map.class)
+                .get("nextCursor");
+        mockMvc.perform(get("/api/admin/users/page").param("limit", "1").param("cursor", cursor)
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(jsonPath("$.items[0].username").value("statsadmin"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        mockMvc.perform(get("/api/admin/users/page").param("role", "admin")
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].username").value("statsadmin"));
+        mockMvc.perform(get("/api/admin/users/page").param("domain", "example.org")
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(jsonPath("$.items.length()").value(0));
+        // A username without @domain is matched through the user's domain
+        jdbcTemplate.update("INSERT INTO domains (name) VALUES ('example.org')");
+        jdbcTemplate.update("UPDATE users SET domain_id = (SELECT id FROM domains WHERE name = 'example.org') "
+                + "WHERE username = 'statsadmin'");
+        mockMvc.perform(get("/api/admin/users/page").param("domain", "Example.org")
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].username").value("statsadmin"));
+
+        MvcResult stream = mockMvc.perform(get("/api/admin/users/stream")
+                .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        String[] lines = stream.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("statsadmin", objectMapper.readValue(lines[1], Map.class).get("username"));
+        assertTrue(!lines[0].contains("password"));
+
+        // A demoted admin's token loses the role once the change reaches the token cache
+        Long adminId = userRepository.findByUsername("statsadmin").orElseThrow().getId();
+        mockMvc.perform(patch("/api/admin/users/" + adminId)
+                .header("Authorization", "Bearer " + adminToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("roles", "USER"))))
+                .andExpect(status().isOk());
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> mockMvc
+                .perform(get("/api/admin/stats").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isForbidden()));
+    }
+
+    @Test
+    @Order(19)
     public void testUpdateSettings() throws Exception {
         Settings settings = new Settings();
         settings.setTheme("dark");
@@ -135,10 +620,135 @@ public class ApiIntegrationTest {
                 .content(objectMapper.writeValueAsString(settings)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.theme").value("dark"));
+        mockMvc.perform(get("/api/settings").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.theme").value("dark"));
+
+        // A change made by another service reaches this one through its event
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        Settings stored = settingsRepository.findByUser_Id(user.getId()).orElseThrow();
+        stored.setTheme("solarized");
+        settingsRepository.save(stored);
+        mailEventRepository.record(user.getId(), MailEvent.SETTINGS_CHANGED, null, null);
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> mockMvc
+                .perform(get("/api/settings").header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.theme").value("solarized")));
     }
 
     @Test
-    @Order(9)
+    @Order(20)
+    public void testReplicaRouting() throws Exception {
+        // Earlier tests wrote as testuser
+        await().atMost(Duration.ofSeconds(5)).until(() -> readTarget("testuser").equals("replica-1"));
+
+        FolderRequest request = new FolderRequest();
+        request.setName("Routing");
+        mockMvc.perform(post("/api/folders")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk());
+
+        // Reads after a write see the primary until the sticky period ends; other users stay on the replica
+        assertEquals("primary", readTarget("testuser"));
+        assertEquals("replica-1", readTarget("statsadmin"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> readTarget("testuser").equals("replica-1"));
+    }
+
+    private String readTarget(String username) {
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(username, null, List.of()));
+        try {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            return readOnly.execute(status -> replicaRoutingDataSource.currentTarget());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    @Order(21)
+    public void testReferenceDataCache() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        double hits = userQueryHits();
+        userRepository.findByUsername("testuser");
+        assertTrue(userQueryHits() > hits);
+        assertTrue(meterRegistry.get("entity.cache.hit.ratio").tag("region", ReferenceDataCache.USER_QUERIES)
+                .gauge().value() > 0);
+
+        // As another node would: the database changes without this node's Hibernate seeing it
+        jdbcTemplate.update("UPDATE users SET roles = 'USER,AUDITOR' WHERE id = ?", user.getId());
+        assertEquals("USER", userRepository.findByUsername("testuser").orElseThrow().getRoles());
+        referenceDataCache.userChanged(user.getId());
+        await().atMost(Duration.ofSeconds(5)).until(
+                () -> userRepository.findByUsername("testuser").orElseThrow().getRoles().equals("USER,AUDITOR"));
+
+        jdbcTemplate.update("UPDATE users SET roles = 'USER' WHERE id = ?", user.getId());
+        referenceDataCache.userChanged(user.getId());
+        await().atMost(Duration.ofSeconds(5)).until(
+                () -> userRepository.findByUsername("testuser").orElseThrow().getRoles().equals("USER"));
+    }
+
+    private double userQueryHits() {
+        return meterRegistry.get("entity.cache.requests")
+                .tags("region", ReferenceDataCache.USER_QUERIES, "result", "hit")
+                .functionCounter().count();
+    }
+
+    @Test
+    @Order(22)
+    public void testDeleteFolderWithEmails() throws Exception {
+        User user = userRepository.findByUsername("testuser").orElseThrow();
+        FolderRequest request = new FolderRequest();
+        request.setName("Purged");
+        mockMvc.perform(post("/api/folders")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk());
+        Long folderId = folderRepository.findByUser_Id(user.getId()).stream()
+                .filter(f -> f.getName().equals("Purged")).findFirst().orElseThrow().getId();
+        for (int i = 0; i < 5; i++) {
+            Email email = emailRepository.save(Email.builder().sender("s@example.com")
+                    .recipient("testuser@devprabhakar.in").subject("Purged " + i).body("body").user(user).build());
+            mockMvc.perform(post("/api/emails/" + email.getId() + "/move").param("folderId", folderId.toString())
+                    .header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(delete("/api/folders/" + folderId).header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isConflict());
+
+        // A subfolder is refused before any email is purged
+        FolderRequest child = new FolderRequest();
+        child.setName("Purged child");
+        child.setParentId(folderId);
+        mockMvc.perform(post("/api/folders")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(child)))
+                .andExpect(status().isOk());
+        Long childId = folderRepository.findByUser_Id(user.getId()).stream()
+                .filter(f -> f.getName().equals("Purged child")).findFirst().orElseThrow().getId();
+        mockMvc.perform(delete("/api/folders/" + folderId).param("purge", "true")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isConflict());
+        assertEquals(5, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM emails WHERE folder_id = ?", Long.class,
+                folderId));
+        mockMvc.perform(delete("/api/folders/" + childId).header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // Five emails in chunks of two
+        mockMvc.perform(delete("/api/folders/" + folderId).param("purge", "true")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+        assertTrue(folderRepository.findById(folderId).isEmpty());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM emails WHERE folder_id = ?", Long.class,
+                folderId));
+    }
+
+    @Test
+    @Order(23)
     public void testLogout() throws Exception {
         mockMvc.perform(post("/api/logout")
                 .header("Authorization", "Bearer " + jwtToken))
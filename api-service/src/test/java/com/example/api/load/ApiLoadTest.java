@@ -0,0 +1,201 @@
+package com.example.api.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how the API holds up while the database is slow.
+ *
+ * Many clients call an endpoint whose query holds a pooled connection for
+ * {@code load.db.latency.ms}; at the same time a probe calls an endpoint that
+ * needs no connection. On platform threads the database callers occupy every
+ * request thread and the probe queues behind them; on virtual threads only
+ * the connection pool limits the database callers.
+ *
+ * Runs only with the {@code load} Maven profile. Sizing is controlled with
+ * system properties: {@code load.clients}, {@code load.requests} (per client),
+ * {@code load.db.latency.ms}, {@code load.pool.size} and {@code load.virtual}
+ * (needs a Java 21 runtime).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Tag("load")
+public class ApiLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 400);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("load.requests", 2);
+    private static final int DB_LATENCY_MS = Integer.getInteger("load.db.latency.ms", 100);
+    private static final int POOL_SIZE = Integer.getInteger("load.pool.size", 20);
+    private static final boolean VIRTUAL = Boolean.getBoolean("load.virtual");
+    private static final long PROBE_INTERVAL_MS = 20;
+
+    private static final String USERNAME = "loadtest";
+    private static final String PASSWORD = "loadtest-password";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private String token;
+
+    @TestConfiguration
+    static class LoadEndpoints {
+
+        @Bean
+        RouterFunction<ServerResponse> loadRoutes(JdbcTemplate jdbcTemplate) {
+            return RouterFunctions.route()
+                    .GET("/api/load/db", request -> ServerResponse.ok().body(
+                            jdbcTemplate.queryForObject("SELECT DB_SLEEP(?)", Integer.class, DB_LATENCY_MS)))
+                    .GET("/api/load/ping", request -> ServerResponse.ok().body("pong"))
+                    .build();
+        }
+    }
+
+    /** Stands in for a slow query: blocks while holding the caller's connection. */
+    public static int sleep(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return millis;
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.threads.virtual.enabled", () -> VIRTUAL);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> POOL_SIZE);
+        // Database callers queue for a connection for the whole run instead of failing
+        registry.add("spring.datasource.hikari.connection-timeout", () -> 600_000);
+        registry.add("logging.level.com.example.api", () -> "WARN");
+    }
+
+    @BeforeEach
+    void login() throws Exception {
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS DB_SLEEP FOR \"" + ApiLoadTest.class.getName() + ".sleep\"");
+        String credentials = objectMapper.writeValueAsString(Map.of("username", USERNAME, "password", PASSWORD));
+        client.send(post("/api/register", credentials), HttpResponse.BodyHandlers.discarding());
+        HttpResponse<String> response = client.send(post("/api/login", credentials),
+                HttpResponse.BodyHandlers.ofString());
+        token = objectMapper.readTree(response.body()).get("token").asText();
+    }
+
+    @Test
+    void slowDatabase() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Future<long[]> probe = clients.submit(() -> runProbe(running));
+
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(this::runClient));
+        }
+        long[] dbLatencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+        int position = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, dbLatencies, position, latencies.length);
+            position += latencies.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        long[] probeLatencies = probe.get();
+        clients.shutdown();
+
+        report(dbLatencies, elapsed, probeLatencies);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, dbLatencies.length);
+    }
+
+    private long[] runClient() throws Exception {
+        long[] latencies = new long[REQUESTS_PER_CLIENT];
+        for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+            latencies[i] = timedGet("/api/load/db");
+        }
+        return latencies;
+    }
+
+    private long[] runProbe(AtomicBoolean running) throws Exception {
+        List<Long> latencies = new ArrayList<>();
+        while (running.get()) {
+            latencies.add(timedGet("/api/load/ping"));
+            Thread.sleep(PROBE_INTERVAL_MS);
+        }
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private long timedGet(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri(path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        long sent = System.nanoTime();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        long latency = System.nanoTime() - sent;
+        assertEquals(200, response.statusCode(), path);
+        return latency;
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static void report(long[] db, long elapsed, long[] probe) {
+        Arrays.sort(db);
+        Arrays.sort(probe);
+        System.out.printf("%n== %s threads: %d clients x %d requests, %d ms queries, pool of %d ==%n",
+                VIRTUAL ? "virtual" : "platform", CLIENTS, REQUESTS_PER_CLIENT, DB_LATENCY_MS, POOL_SIZE);
+        System.out.printf("database %6d reqs  %8.1f req/s  p50 %8.2f ms  p99 %8.2f ms%n", db.length,
+                db.length * 1_000_000_000d / elapsed, millis(percentile(db, 0.50)), millis(percentile(db, 0.99)));
+        System.out.printf("probe    %6d reqs                 p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%n",
+                probe.length, millis(percentile(probe, 0.50)), millis(percentile(probe, 0.99)),
+                millis(percentile(probe, 1.0)));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
@@ -0,0 +1,52 @@
+#!/usr/bin/env python3
+"""Compare two JMH JSON result files (-rf json) side by side.
+
+Usage: python benchmarks/compare.py baseline.json candidate.json
+
+Prints the primary score of every benchmark present in both files, the
+relative change, and the normalized allocation rate (bytes/op) when the runs
+were made with -prof gc.
+"""
+import json
+import sys
+
+
+def load(path):
+    with open(path) as f:
+        results = {}
+        for run in json.load(f):
+            params = run.get("params") or {}
+            key = run["benchmark"].rsplit(".", 2)[-2:]
+            key = ".".join(key)
+            if params:
+                key += " [" + ", ".join(f"{k}={v}" for k, v in sorted(params.items())) + "]"
+            alloc = run.get("secondaryMetrics", {}).get("gc.alloc.rate.norm")
+            results[key] = (run["primaryMetric"]["score"], run["primaryMetric"]["scoreUnit"],
+                            alloc["score"] if alloc else None)
+        return results
+
+
+def fmt_alloc(value):
+    return "-" if value is None else f"{value:,.0f}"
+
+
+def main():
+    if len(sys.argv) != 3:
+        sys.exit(__doc__)
+    baseline, candidate = load(sys.argv[1]), load(sys.argv[2])
+    rows = [("benchmark", "baseline", "candidate", "unit", "change", "B/op before", "B/op after")]
+    for key in sorted(baseline.keys() & candidate.keys()):
+        before, unit, alloc_before = baseline[key]
+        after, _, alloc_after = candidate[key]
+        change = (after - before) / before * 100 if before else 0.0
+        rows.append((key, f"{before:,.3f}", f"{after:,.3f}", unit, f"{change:+.1f}%",
+                     fmt_alloc(alloc_before), fmt_alloc(alloc_after)))
+    widths = [max(len(row[i]) for row in rows) for i in range(len(rows[0]))]
+    for row in rows:
+        print("  ".join(cell.ljust(widths[i]) if i == 0 else cell.rjust(widths[i]) for i, cell in enumerate(row)))
+    for key in sorted(baseline.keys() ^ candidate.keys()):
+        print(f"only in {'baseline' if key in baseline else 'candidate'}: {key}")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,68 @@
+package com.example.benchmarks;
+
+import com.example.smtp.service.DkimSigningService;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DKIM signing of a typical outbound message with a 2048-bit RSA key, as done
+ * by the delivery worker for every queue item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DkimSigningBenchmark {
+
+    private static final String TEST_DOMAIN = "supersecret-testing-domain.com";
+
+    private DkimSigningService service;
+    private byte[] message;
+    private Path privateKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        privateKey = Files.createTempFile("dkim-benchmark", ".der");
+        Files.write(privateKey, generator.generateKeyPair().getPrivate().getEncoded());
+
+        service = new DkimSigningService();
+        // simple-java-mail skips the selector DNS lookup for its own test domain only
+        Fixtures.setField(service, "signingDomain", TEST_DOMAIN);
+        Fixtures.setField(service, "selector", "default");
+        Fixtures.setField(service, "privateKeyPath", privateKey.toString());
+        message = Fixtures.message("Bob <bob@" + TEST_DOMAIN + ">", 4096);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(privateKey);
+    }
+
+    /** The signature is computed lazily when the message is written out for delivery. */
+    @Benchmark
+    public MimeMessage signMessage() throws Exception {
+        MimeMessage signed = service.signMessage(message);
+        signed.writeTo(OutputStream.nullOutputStream());
+        return signed;
+    }
+}
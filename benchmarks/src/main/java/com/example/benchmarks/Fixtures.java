@@ -0,0 +1,86 @@
+package com.example.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Test data and stand-ins shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /** A plain-text message of roughly {@code bodyBytes} with a realistic header block. */
+    static byte[] message(int bodyBytes) {
+        return message("Alice Example <alice@example.org>", bodyBytes);
+    }
+
+    static byte[] message(String from, int bodyBytes) {
+        StringBuilder message = new StringBuilder(bodyBytes + 1024);
+        message.append("Received: from mail.example.org (mail.example.org [192.0.2.10])\r\n")
+                .append("\tby mx.devprabhakar.in with ESMTPS id 4Qx2n1; Mon, 19 Oct 2026 10:00:00 +0000\r\n")
+                .append("Received: from [10.0.0.5] by mail.example.org; Mon, 19 Oct 2026 09:59:58 +0000\r\n")
+                .append("From: ").append(from).append("\r\n")
+                .append("To: bob@devprabhakar.in\r\n")
+                .append("Subject: Quarterly report and meeting notes\r\n")
+                .append("Date: Mon, 19 Oct 2026 09:59:57 +0000\r\n")
+                .append("Message-ID: <20261019095957.1234@example.org>\r\n")
+                .append("MIME-Version: 1.0\r\n")
+                .append("Content-Type: text/plain; charset=UTF-8\r\n")
+                .append("Content-Transfer-Encoding: 8bit\r\n")
+                .append("\r\n");
+        String line = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.\r\n";
+        while (message.length() < bodyBytes) {
+            message.append(line);
+        }
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A repository (or entity manager) stand-in whose {@code save} returns its
+     * argument, whose list queries find nothing, whose {@code persist} and
+     * {@code flush} do nothing, and which does no I/O.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T savingRepository(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            if (method.getReturnType() == List.class) {
+                return List.of();
+            }
+            switch (method.getName()) {
+                case "save":
+                    return args[0];
+                case "persist":
+                case "flush":
+                case "detach":
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /** Sets an injected field (e.g. a {@code @Value} property) outside of a Spring context. */
+    static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + name, e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.benchmarks;
+
+import com.example.common.entity.OutboundQueue;
+import com.example.common.persistence.BatchPersister;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.internal.DatasourceConnectionProviderImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound queue rows per second written through {@link BatchPersister}, as
+ * bulk send writes them: {@value #ROWS} rows per transaction. A batch size of
+ * 1 is what identity ids forced, one INSERT round trip per row; 50 is the
+ * configured JDBC batch size with pooled sequence ids.
+ *
+ * Runs on in-memory H2 by default, which has no network round trip and so
+ * understates the gain; pass {@code -Djdbc.url=jdbc:postgresql://...} (and
+ * {@code -Djdbc.user}, {@code -Djdbc.password}) to measure against PostgreSQL.
+ * Connections come from a Hikari pool, as in the services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(InsertBatchingBenchmark.ROWS)
+public class InsertBatchingBenchmark {
+
+    static final int ROWS = 500;
+
+    @Param({ "1", "50" })
+    public int batchSize;
+
+    private HikariDataSource dataSource;
+    private SessionFactory sessionFactory;
+    private byte[] emailData;
+
+    @Setup
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("jdbc.url", "jdbc:h2:mem:batching;DB_CLOSE_DELAY=-1"));
+        dataSource.setUsername(System.getProperty("jdbc.user", "sa"));
+        dataSource.setPassword(System.getProperty("jdbc.password", ""));
+        // Native bootstrap only reads the deprecated hibernate.connection.* settings, so pass the pool itself
+        DatasourceConnectionProviderImpl connections = new DatasourceConnectionProviderImpl();
+        connections.setDataSource(dataSource);
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(OutboundQueue.class)
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(batchSize))
+                .setProperty(AvailableSettings.ORDER_INSERTS, "true");
+        configuration.getProperties().put(AvailableSettings.CONNECTION_PROVIDER, connections);
+        sessionFactory = configuration.buildSessionFactory();
+        emailData = Fixtures.message(4096);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() {
+        sessionFactory.inTransaction(session -> session.createMutationQuery("DELETE FROM OutboundQueue")
+                .executeUpdate());
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void queueRows() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboundQueue> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            OutboundQueue row = new OutboundQueue();
+            row.setSender("alice");
+            row.setRecipient("user" + i + "@example.org");
+            row.setEmailData(emailData);
+            row.setNextRetryAt(now);
+            row.setCreatedAt(now);
+            rows.add(row);
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            BatchPersister persister = new BatchPersister(session, batchSize);
+            persister.persistAll(rows);
+            persister.flush();
+            transaction.commit();
+        }
+    }
+}
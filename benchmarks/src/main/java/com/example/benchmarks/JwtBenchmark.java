@@ -0,0 +1,56 @@
+package com.example.benchmarks;
+
+import com.example.api.security.JwtUtil;
+import com.example.api.security.UserPrincipal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT verification as performed for every authenticated API request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        token = jwtUtil.generateToken(1L, "benchmark", "USER");
+    }
+
+    /** Signature check and claim decoding without the verified-token cache. */
+    @Benchmark
+    public UserPrincipal extractPrincipal() {
+        return jwtUtil.extractPrincipal(token);
+    }
+
+    /** What {@code JwtAuthenticationFilter} does per request: a cache hit for a token seen before. */
+    @Benchmark
+    public UserPrincipal filterRequest() {
+        return jwtUtil.verify(token);
+    }
+
+    /** The filter's previous sequence: extractUsername followed by validateToken. */
+    @Benchmark
+    public Boolean filterRequestTwoParses() {
+        String username = jwtUtil.extractUsername(token);
+        return jwtUtil.validateToken(token, username);
+    }
+}
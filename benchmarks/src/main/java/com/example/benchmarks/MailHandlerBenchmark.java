@@ -0,0 +1,90 @@
+package com.example.benchmarks;
+
+import com.example.common.persistence.BatchPersister;
+import com.example.common.repository.EmailRepository;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.RawMessageRepository;
+import com.example.common.store.DatabaseMessageStore;
+import com.example.smtp.handler.MailHandler;
+import com.example.smtp.handler.MessageParser;
+import com.example.smtp.metrics.SmtpMetrics;
+import com.example.smtp.service.IngestService;
+import com.example.smtp.service.ThreadingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.subethamail.smtp.MessageContext;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receive path for a typical (~4 KB) and a 20 MB message: header/body parsing
+ * alone and the full {@link MailHandler#data} call with persistence stubbed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailHandlerBenchmark {
+
+    @Param({ "4096", "20971520" })
+    public int size;
+
+    private byte[] message;
+    private IngestService ingestService;
+    private SmtpMetrics metrics;
+    private MessageContext context;
+
+    @Setup
+    public void setUp() {
+        message = Fixtures.message(size);
+        BatchPersister batchPersister = new BatchPersister(Fixtures.savingRepository(EntityManager.class), 50);
+        ingestService = new IngestService(batchPersister,
+                Fixtures.savingRepository(FolderCounterRepository.class),
+                Fixtures.savingRepository(MailEventRepository.class),
+                new DatabaseMessageStore(batchPersister, Fixtures.savingRepository(RawMessageRepository.class)),
+                new ThreadingService(Fixtures.savingRepository(EmailRepository.class), 100_000, 72));
+        metrics = new SmtpMetrics(new SimpleMeterRegistry());
+        context = (MessageContext) Proxy.newProxyInstance(MessageContext.class.getClassLoader(),
+                new Class<?>[] { MessageContext.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSessionId":
+                            return "benchmark";
+                        case "getRemoteAddress":
+                            return new InetSocketAddress("192.0.2.10", 25);
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Benchmark
+    public MessageParser.ParsedMessage parse() throws Exception {
+        return MessageParser.parse(message);
+    }
+
+    @Benchmark
+    public String data() throws Exception {
+        MailHandler handler = new MailHandler(context, ingestService, metrics, "inbound",
+                "benchmark.1", 0, System.nanoTime());
+        handler.from("alice@example.org");
+        handler.recipient("bob@devprabhakar.in");
+        return handler.data(new ByteArrayInputStream(message));
+    }
+}
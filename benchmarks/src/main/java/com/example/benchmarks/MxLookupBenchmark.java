@@ -0,0 +1,59 @@
+package com.example.benchmarks;
+
+import com.example.smtp.service.MxLookupService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a cached MX answer (wire format, five records) into the ordered
+ * host list used for direct delivery, without any network lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MxLookupBenchmark {
+
+    private final MxLookupService service = new MxLookupService();
+    private byte[] answer;
+
+    @Setup
+    public void setUp() throws Exception {
+        Name domain = Name.fromString("example.org.");
+        Message message = Message.newQuery(Record.newRecord(domain, Type.MX, DClass.IN));
+        message.getHeader().setFlag(Flags.QR);
+        int[] priorities = { 30, 10, 50, 20, 40 };
+        for (int i = 0; i < priorities.length; i++) {
+            message.addRecord(new MXRecord(domain, DClass.IN, 3600, priorities[i],
+                    Name.fromString("mx" + i + ".example.org.")), Section.ANSWER);
+        }
+        answer = message.toWire();
+    }
+
+    @Benchmark
+    public List<String> parseCachedAnswer() throws Exception {
+        Message message = new Message(answer);
+        return service.sortedHosts(message.getSection(Section.ANSWER).toArray(new Record[0]));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.benchmarks;
+
+import com.example.smtp.util.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.subethamail.smtp.RejectException;
+
+import java.net.InetAddress;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RateLimiter#onConnect} called from 8 threads at once, either all for
+ * the same client address (one hot queue) or spread over 1024 addresses.
+ *
+ * Calls come far faster than real connections, so with the wall clock every
+ * address would be over the limit within microseconds and each call would
+ * measure a rejection against a queue of millions of timestamps. Instead the
+ * limiter's clock advances by a fixed step per call, so that each address
+ * connects {@code perClientPerMinute} times a minute of modelled time against
+ * the default limit of 20: 10 measures the accepted path, 40 the rejected
+ * path of a client over the limit, both with queues of realistic length.
+ * The shared counter behind the clock adds some contention of its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RateLimiterBenchmark {
+
+    private static final int LIMIT_PER_MINUTE = 20;
+
+    @Param({ "1", "1024" })
+    public int clients;
+
+    @Param({ "10", "40" })
+    public int perClientPerMinute;
+
+    private RateLimiter rateLimiter;
+    private InetAddress[] addresses;
+
+    @Setup
+    public void setUp() throws Exception {
+        rateLimiter = new RateLimiter();
+        Fixtures.setField(rateLimiter, "maxConnectionsPerMinute", LIMIT_PER_MINUTE);
+        Fixtures.setField(rateLimiter, "clock",
+                new SteppingClock(TimeUnit.MINUTES.toNanos(1) / ((long) perClientPerMinute * clients)));
+        addresses = new InetAddress[clients];
+        for (int i = 0; i < clients; i++) {
+            addresses[i] = InetAddress.getByAddress(new byte[] { 10, 1, (byte) (i >> 8), (byte) i });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public boolean onConnect(Cursor cursor) {
+        InetAddress address = addresses[cursor.next++ % addresses.length];
+        try {
+            rateLimiter.onConnect(address);
+            return true;
+        } catch (RejectException e) {
+            return false;
+        }
+    }
+
+    /** A clock that moves forward by {@code stepNanos} every time it is read. */
+    private static final class SteppingClock extends Clock {
+
+        private final AtomicLong nanos = new AtomicLong();
+        private final long stepNanos;
+
+        private SteppingClock(long stepNanos) {
+            this.stepNanos = stepNanos;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochSecond(0, nanos.addAndGet(stepNanos));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
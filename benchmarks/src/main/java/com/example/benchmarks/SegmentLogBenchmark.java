@@ -0,0 +1,82 @@
+package com.example.benchmarks;
+
+import com.example.common.store.SegmentLogMessageStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link SegmentLogMessageStore} appends of a 4 KB message, with and without
+ * forcing every one to disk, and 16 KB range reads of random stored messages
+ * as raw downloads make them. Segments go to a temporary directory, or to
+ * {@code -Dstore.dir}, which should be on the disk being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentLogBenchmark {
+
+    private static final int STORED = 2_000;
+
+    @Param({ "false", "true" })
+    public boolean fsync;
+
+    private Path directory;
+    private SegmentLogMessageStore store;
+    private byte[] message;
+    private long nextId;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path parent = Path.of(System.getProperty("store.dir", System.getProperty("java.io.tmpdir")));
+        directory = Files.createTempDirectory(parent, "segment-log");
+        store = new SegmentLogMessageStore(directory, null, 64L * 1024 * 1024, fsync,
+                ids -> List.copyOf(ids), 3600, 0.5);
+        store.start();
+        message = Fixtures.message(4096);
+        byte[] large = Fixtures.message(64 * 1024);
+        for (nextId = 1; nextId <= STORED; nextId++) {
+            store.write(nextId, large);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.stop();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void write() {
+        store.write(nextId++, message);
+    }
+
+    @Benchmark
+    public byte[] readRange() {
+        long id = ThreadLocalRandom.current().nextLong(1, STORED + 1);
+        return store.read(id, 16 * 1024, 16 * 1024);
+    }
+}
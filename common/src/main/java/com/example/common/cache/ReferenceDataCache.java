@@ -0,0 +1,308 @@
+package com.example.common.cache;
+
+import com.example.common.entity.Folder;
+import com.example.common.entity.MailEvent;
+import com.example.common.entity.User;
+import com.example.common.event.MailEventTail;
+import com.example.common.repository.MailEventRepository;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.support.TransactionOperations;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Hibernate second-level cache of the reference entities read on nearly
+ * every request: {@link User}, {@link Folder} and
+ * {@link com.example.common.entity.Domain}, each in its own region, plus a
+ * query region per entity for the lookups by name.
+ *
+ * Hibernate keeps the regions right for changes made through this node. For
+ * the other nodes and the other service, whoever changes a user or folder
+ * calls {@link #userChanged(Long)} or {@link #folderChanged(Long, Long)} in
+ * the changing transaction, which records a {@code USER_CHANGED} or
+ * {@code FOLDERS_CHANGED} event. Every instance reads the new events each
+ * poll and evicts the entities they name and the entity's query region. As
+ * events can commit out of id order, polls re-read the events of the
+ * lookback through a {@link MailEventTail}. When
+ * reads may go to a lagging replica, the same evictions are repeated after
+ * the settle delay, so that a copy loaded from a replica that had not yet
+ * seen the change does not stay cached. Other caches of user or folder data
+ * register with {@link #onUserChanged(LongConsumer)} and
+ * {@link #onFoldersChanged(LongConsumer)} to be told of the same evictions. Domains are only changed in the database and rely on their TTL.
+ *
+ * Hit ratios and request counts are published per region.
+ */
+@Slf4j
+public class ReferenceDataCache {
+
+    public static final String USERS = "users";
+    public static final String FOLDERS = "folders";
+    public static final String DOMAINS = "domains";
+    public static final String USER_QUERIES = "user-queries";
+    public static final String FOLDER_QUERIES = "folder-queries";
+    public static final String DOMAIN_QUERIES = "domain-queries";
+
+    private static final List<String> ENTITY_REGIONS = List.of(USERS, FOLDERS, DOMAINS);
+    private static final List<String> QUERY_REGIONS = List.of(USER_QUERIES, FOLDER_QUERIES, DOMAIN_QUERIES,
+            RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+    private static final List<String> EVENT_TYPES = List.of(MailEvent.USER_CHANGED, MailEvent.FOLDERS_CHANGED);
+
+    private final SessionFactory sessionFactory;
+    private final MailEventRepository mailEventRepository;
+    private final TransactionOperations transactions;
+    private final long pollIntervalMs;
+    private final long settleMs;
+    private final long lookbackMs;
+    private final MeterRegistry meterRegistry;
+
+    // Written only by the scheduler thread after start
+    private final Deque<PendingEviction> pending = new ArrayDeque<>();
+    private final List<LongConsumer> userListeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> folderListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private MailEventTail tail;
+
+    /**
+     * @param transactions runs the polls; must reach the primary where reads may go to replicas
+     * @param settleMs     how long after an eviction to repeat it, or 0 when all reads go to the primary
+     * @param lookbackMs   how long to keep re-reading events, longer than any transaction recording one
+     */
+    public ReferenceDataCache(EntityManagerFactory entityManagerFactory, MailEventRepository mailEventRepository,
+            TransactionOperations transactions, long pollIntervalMs, long settleMs, long lookbackMs,
+            MeterRegistry meterRegistry) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.mailEventRepository = mailEventRepository;
+        this.transactions = transactions;
+        this.pollIntervalMs = pollIntervalMs;
+        this.settleMs = settleMs;
+        this.lookbackMs = lookbackMs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Cache manager with the regions and their limits, from
+     * {@code entity.cache.<region>.size} and {@code .ttl.seconds} for the
+     * entity regions and {@code entity.cache.queries.*} for the query
+     * regions. {@link #configure} tells Hibernate to fail on any region not
+     * created here.
+     */
+    public static CacheManager createCacheManager(Environment environment) {
+        // A manager of its own, so that contexts sharing the JVM do not share regions
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("reference-data-" + UUID.randomUUID()),
+                        ReferenceDataCache.class.getClassLoader());
+        Map<String, long[]> defaults = Map.of(USERS, new long[]{10_000, 600}, FOLDERS, new long[]{50_000, 600},
+                DOMAINS, new long[]{1_000, 3600});
+        for (String region : ENTITY_REGIONS) {
+            createRegion(cacheManager, region,
+                    environment.getProperty("entity.cache." + region + ".size", Long.class, defaults.get(region)[0]),
+                    environment.getProperty("entity.cache." + region + ".ttl.seconds", Long.class,
+                            defaults.get(region)[1]));
+        }
+        long querySize = environment.getProperty("entity.cache.queries.size", Long.class, 10_000L);
+        long queryTtl = environment.getProperty("entity.cache.queries.ttl.seconds", Long.class, 300L);
+        for (String region : QUERY_REGIONS) {
+            createRegion(cacheManager, region, querySize, queryTtl);
+        }
+        // One entry per table; must outlive every cached query result
+        createRegion(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, 1_000, 0);
+        return cacheManager;
+    }
+
+    /** Hibernate settings for caching through the given manager. */
+    public static void configure(Map<String, Object> hibernateProperties, CacheManager cacheManager) {
+        hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+        hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+        hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+        hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+        hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+    }
+
+    private static void createRegion(CacheManager cacheManager, String name, long size, long ttlSeconds) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        // Hibernate's cache entries are immutable, so copying them on every access would buy nothing
+        configuration.setStoreByValue(false);
+        configuration.setMaximumSize(OptionalLong.of(size));
+        if (ttlSeconds > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        }
+        cacheManager.createCache(name, configuration);
+    }
+
+    public void start() {
+        Statistics statistics = sessionFactory.getStatistics();
+        // Enabled here rather than by hibernate.generate_statistics, which also logs metrics for every session
+        statistics.setStatisticsEnabled(true);
+        for (String region : ENTITY_REGIONS) {
+            bindMetrics(region, () -> statistics.getDomainDataRegionStatistics(region));
+        }
+        for (String region : QUERY_REGIONS) {
+            bindMetrics(region, () -> statistics.getQueryRegionStatistics(region));
+        }
+
+        tail = new MailEventTail(transactions.execute(status -> mailEventRepository.findLastId()), lookbackMs);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reference-data-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /** Tells the listener the id of every user evicted, on the poll thread. */
+    public void onUserChanged(LongConsumer listener) {
+        userListeners.add(listener);
+    }
+
+    /** Tells the listener the id of every user whose folders are evicted, on the poll thread. */
+    public void onFoldersChanged(LongConsumer listener) {
+        folderListeners.add(listener);
+    }
+
+    /** Call in the transaction that created, changed or deleted the user. */
+    public void userChanged(Long userId) {
+        mailEventRepository.record(userId, MailEvent.USER_CHANGED, null, null);
+    }
+
+    /** Call in the transaction that created, changed or deleted the folder. */
+    public void folderChanged(Long userId, Long folderId) {
+        mailEventRepository.record(userId, MailEvent.FOLDERS_CHANGED, null, folderId);
+    }
+
+    void poll() {
+        try {
+            evictSettled();
+            List<MailEvent> events = transactions.execute(status -> {
+                long from = tail.from();
+                long newest = mailEventRepository.findLastId();
+                if (newest <= from) {
+                    return List.of();
+                }
+                List<MailEvent> found = new ArrayList<>();
+                for (MailEvent event : mailEventRepository.findByTypes(EVENT_TYPES, from, newest)) {
+                    if (tail.add(event.getId())) {
+                        found.add(event);
+                    }
+                }
+                return found;
+            });
+            if (!events.isEmpty()) {
+                evict(events);
+                if (settleMs > 0) {
+                    pending.add(new PendingEviction(System.currentTimeMillis() + settleMs, events));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Polling reference data changes failed: {}", e.getMessage());
+        }
+    }
+
+    private void evictSettled() {
+        long now = System.currentTimeMillis();
+        List<MailEvent> due = new ArrayList<>();
+        while (!pending.isEmpty() && pending.peekFirst().getDueAt() <= now) {
+            due.addAll(pending.pollFirst().getEvents());
+        }
+        if (!due.isEmpty()) {
+            evict(due);
+        }
+    }
+
+    private void evict(List<MailEvent> events) {
+        Cache cache = sessionFactory.getCache();
+        boolean users = false;
+        boolean folders = false;
+        for (MailEvent event : events) {
+            if (MailEvent.USER_CHANGED.equals(event.getType())) {
+                cache.evictEntityData(User.class, event.getUserId());
+                for (LongConsumer listener : userListeners) {
+                    listener.accept(event.getUserId());
+                }
+                users = true;
+            } else if (MailEvent.FOLDERS_CHANGED.equals(event.getType())) {
+                if (event.getFolderId() != null) {
+                    cache.evictEntityData(Folder.class, event.getFolderId());
+                }
+                for (LongConsumer listener : folderListeners) {
+                    listener.accept(event.getUserId());
+                }
+                folders = true;
+            }
+        }
+        if (users) {
+            cache.evictQueryRegion(USER_QUERIES);
+        }
+        if (folders) {
+            cache.evictQueryRegion(FOLDER_QUERIES);
+        }
+        log.debug("Evicted reference data named by {} events", events.size());
+    }
+
+    private void bindMetrics(String region, Supplier<CacheRegionStatistics> regionStatistics) {
+        ToDoubleFunction<ReferenceDataCache> hits = c -> count(regionStatistics, CacheRegionStatistics::getHitCount);
+        ToDoubleFunction<ReferenceDataCache> misses = c -> count(regionStatistics,
+                CacheRegionStatistics::getMissCount);
+        FunctionCounter.builder("entity.cache.requests", this, hits)
+                .tags("region", region, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("entity.cache.requests", this, misses)
+                .tags("region", region, "result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("entity.cache.hit.ratio", this, c -> {
+                    double hit = hits.applyAsDouble(c);
+                    double total = hit + misses.applyAsDouble(c);
+                    return total > 0 ? hit / total : Double.NaN;
+                })
+                .tag("region", region)
+                .register(meterRegistry);
+    }
+
+    private static double count(Supplier<CacheRegionStatistics> regionStatistics,
+            ToDoubleFunction<CacheRegionStatistics> counter) {
+        CacheRegionStatistics statistics = regionStatistics.get();
+        return statistics != null ? counter.applyAsDouble(statistics) : 0;
+    }
+
+    @Value
+    private static class PendingEviction {
+        long dueAt;
+        List<MailEvent> events;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.common.cache;
+
+import com.example.common.entity.MailEvent;
+import com.example.common.entity.Settings;
+import com.example.common.event.MailEventTail;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.SettingsRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of user settings, so that reading a user's settings per
+ * request costs no query.
+ *
+ * Whoever changes settings calls {@link #changed(Long)} in the changing
+ * transaction, which records a {@code SETTINGS_CHANGED} event and drops the
+ * local entry once the transaction commits. Every instance reads the new
+ * events each poll, by primary key, and drops the entries they name, so other
+ * nodes see the change within one poll interval. As
+ * events can commit out of id order, polls re-read the events of the lookback
+ * through a {@link MailEventTail}. The TTL bounds staleness if polling fails.
+ * Users without settings are cached as empty too.
+ *
+ * Polls and loads run through the given transaction operations. Where reads
+ * may go to a replica, these must reach the primary: a poll spreading its
+ * queries over replicas at different positions can skip events, and a load
+ * right after an invalidation can cache a copy from before the change.
+ *
+ * Cached entities are shared between callers and must not be modified; load
+ * from the repository to update.
+ */
+@Slf4j
+public class SettingsCache {
+
+    private static final List<String> EVENT_TYPES = List.of(MailEvent.SETTINGS_CHANGED);
+
+    private final SettingsRepository settingsRepository;
+    private final MailEventRepository mailEventRepository;
+    private final TransactionOperations transactions;
+    private final long pollIntervalMs;
+    private final long lookbackMs;
+    private final Cache<Long, Optional<Settings>> settingsByUser;
+
+    private ScheduledExecutorService scheduler;
+    private MailEventTail tail;
+
+    public SettingsCache(SettingsRepository settingsRepository, MailEventRepository mailEventRepository,
+            TransactionOperations transactions, int size, long ttlSeconds, long pollIntervalMs, long lookbackMs) {
+        this.settingsRepository = settingsRepository;
+        this.mailEventRepository = mailEventRepository;
+        this.transactions = transactions;
+        this.pollIntervalMs = pollIntervalMs;
+        this.lookbackMs = lookbackMs;
+        this.settingsByUser = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public void start() {
+        tail = new MailEventTail(transactions.execute(status -> mailEventRepository.findLastId()), lookbackMs);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "settings-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public Optional<Settings> get(Long userId) {
+        return settingsByUser.get(userId,
+                id -> transactions.execute(status -> settingsRepository.findByUser_Id(id)));
+    }
+
+    /** Call in the transaction that changed the user's settings. */
+    public void changed(Long userId) {
+        mailEventRepository.record(userId, MailEvent.SETTINGS_CHANGED, null, null);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Not before the commit, or a concurrent load could cache the old settings again
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    settingsByUser.invalidate(userId);
+                }
+            });
+        } else {
+            settingsByUser.invalidate(userId);
+        }
+    }
+
+    void poll() {
+        try {
+            transactions.executeWithoutResult(status -> {
+                long from = tail.from();
+                long newest = mailEventRepository.findLastId();
+                if (newest <= from) {
+                    return;
+                }
+                for (MailEvent event : mailEventRepository.findByTypes(EVENT_TYPES, from, newest)) {
+                    if (tail.add(event.getId())) {
+                        settingsByUser.invalidate(event.getUserId());
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Polling settings changes failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.common.codec;
+
+import java.util.Arrays;
+
+/**
+ * A compressed payload attribute as its entity holds it: either raw bytes
+ * set by the application, compressed when the row is written, or the stored
+ * bytes of a loaded row, decompressed on the first call to {@link #bytes()}.
+ * Loading and saving a row without reading the payload never decompresses
+ * or recompresses it.
+ *
+ * Immutable; entities replace the instance to change the value. The arrays
+ * are not copied.
+ */
+public final class CompressedBytes {
+
+    private final byte[] raw;
+    private final byte[] stored;
+    private final PayloadCodec codec;
+    private volatile byte[] decoded;
+
+    private CompressedBytes(byte[] raw, byte[] stored, PayloadCodec codec) {
+        this.raw = raw;
+        this.stored = stored;
+        this.codec = codec;
+    }
+
+    public static CompressedBytes of(byte[] raw) {
+        return raw != null ? new CompressedBytes(raw, null, null) : null;
+    }
+
+    static CompressedBytes ofStored(byte[] stored, PayloadCodec codec) {
+        return new CompressedBytes(null, stored, codec);
+    }
+
+    public byte[] bytes() {
+        if (raw != null) {
+            return raw;
+        }
+        byte[] value = decoded;
+        if (value == null) {
+            value = codec.decode(stored);
+            decoded = value;
+        }
+        return value;
+    }
+
+    byte[] stored(PayloadCodec codec) {
+        return stored != null ? stored : codec.encode(raw);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CompressedBytes)) {
+            return false;
+        }
+        CompressedBytes that = (CompressedBytes) other;
+        // Compared in the form both have, so equal stored rows are never rewritten
+        return stored != null ? Arrays.equals(stored, that.stored) : Arrays.equals(raw, that.raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return stored != null ? Arrays.hashCode(stored) : Arrays.hashCode(raw);
+    }
+
+    @Override
+    public String toString() {
+        return stored != null ? "CompressedBytes[" + stored.length + " bytes stored]"
+                : "CompressedBytes[" + raw.length + " bytes]";
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.common.codec;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Maps {@link CompressedBytes} attributes to their stored form through the
+ * application's {@link PayloadCodec}, which Hibernate obtains from the Spring
+ * context. Attributes using it should be {@code @Immutable} so that dirty
+ * checking compares instances rather than copying payloads.
+ */
+@Converter
+public class CompressedBytesConverter implements AttributeConverter<CompressedBytes, byte[]> {
+
+    private final PayloadCodec codec;
+
+    /** Outside a Spring context: zstd without dictionaries. */
+    public CompressedBytesConverter() {
+        this(new PayloadCodec(3));
+    }
+
+    @Autowired
+    public CompressedBytesConverter(PayloadCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(CompressedBytes attribute) {
+        return attribute != null ? attribute.stored(codec) : null;
+    }
+
+    @Override
+    public CompressedBytes convertToEntityAttribute(byte[] stored) {
+        return stored != null ? CompressedBytes.ofStored(stored, codec) : null;
+    }
+}
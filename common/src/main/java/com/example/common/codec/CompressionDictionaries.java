@@ -0,0 +1,70 @@
+package com.example.common.codec;
+
+import com.example.common.entity.CompressionDictionary;
+import com.example.common.repository.CompressionDictionaryRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link PayloadCodec} on the newest dictionary in
+ * {@code compression_dictionaries}, so that every instance of both services
+ * compresses with a dictionary soon after one is trained anywhere. Older
+ * dictionaries are fetched on demand when a value written with one is read.
+ */
+@Slf4j
+public class CompressionDictionaries {
+
+    private final PayloadCodec codec;
+    private final CompressionDictionaryRepository repository;
+    private final long refreshSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    public CompressionDictionaries(PayloadCodec codec, CompressionDictionaryRepository repository,
+            long refreshSeconds) {
+        this.codec = codec;
+        this.repository = repository;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public void start() {
+        codec.setDictionaryLoader(id -> repository.findById(id).map(CompressionDictionary::getData).orElse(null));
+        refresh();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "compression-dictionaries");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /** Adds a newly trained dictionary and makes it current here. */
+    public CompressionDictionary add(byte[] data) {
+        CompressionDictionary saved = repository.save(
+                new CompressionDictionary(null, data, LocalDateTime.now()));
+        codec.useDictionary(saved.getId(), saved.getData());
+        return saved;
+    }
+
+    void refresh() {
+        try {
+            Integer latest = repository.findLatestId();
+            if (latest != null && !Objects.equals(latest, codec.currentDictionaryId())) {
+                repository.findById(latest).ifPresent(d -> codec.useDictionary(d.getId(), d.getData()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Refreshing compression dictionaries failed: {}", e.getMessage());
+        }
+    }
+}
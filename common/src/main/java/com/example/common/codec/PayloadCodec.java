@@ -0,0 +1,186 @@
+package com.example.common.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
+
+/**
+ * Compresses stored message payloads with zstd, using the latest trained
+ * dictionary when there is one. Mail shares most of its header vocabulary,
+ * so a dictionary trained on earlier messages shrinks even small messages.
+ *
+ * The first byte of a stored value is its format:
+ * <pre>
+ * 0  uncompressed, when compression would not make it smaller
+ * 1  zstd frame
+ * 2  dictionary id (4 bytes, big-endian), then a zstd frame using it
+ * </pre>
+ * Any other first byte is a value written before compression, returned as
+ * is; raw messages start with a header name, which is printable ASCII.
+ *
+ * Thread-safe. Dictionaries are added with {@link #useDictionary}; values
+ * naming a dictionary this instance does not know yet are decoded after
+ * fetching it through the dictionary loader.
+ */
+public class PayloadCodec {
+
+    public static final byte STORED = 0;
+    public static final byte ZSTD = 1;
+    public static final byte ZSTD_DICTIONARY = 2;
+    /** Enough of a stored value to tell its format and dictionary. */
+    public static final int HEADER_LENGTH = 5;
+
+    private final int level;
+    private final ConcurrentMap<Integer, ZstdDictDecompress> decompressors = new ConcurrentHashMap<>();
+    private volatile IntFunction<byte[]> dictionaryLoader = id -> null;
+    private volatile Dictionary current;
+
+    public PayloadCodec(int level) {
+        this.level = level;
+    }
+
+    /** Fetches dictionaries by id for values written with one this instance has not seen. */
+    public void setDictionaryLoader(IntFunction<byte[]> dictionaryLoader) {
+        this.dictionaryLoader = dictionaryLoader;
+    }
+
+    /** Adds a dictionary; new values are compressed with the highest id seen. */
+    public synchronized void useDictionary(int id, byte[] dictionary) {
+        decompressors.computeIfAbsent(id, key -> new ZstdDictDecompress(dictionary));
+        if (current == null || current.id < id) {
+            current = new Dictionary(id, new ZstdDictCompress(dictionary, level));
+        }
+    }
+
+    /** Id of the dictionary new values are compressed with, or null. */
+    public Integer currentDictionaryId() {
+        Dictionary dictionary = current;
+        return dictionary != null ? dictionary.id : null;
+    }
+
+    public byte[] encode(byte[] raw) {
+        Dictionary dictionary = current;
+        int offset = dictionary != null ? HEADER_LENGTH : 1;
+        byte[] out = new byte[offset + (int) Zstd.compressBound(raw.length)];
+        long size = dictionary != null
+                ? Zstd.compressFastDict(out, offset, raw, 0, raw.length, dictionary.compress)
+                : Zstd.compressByteArray(out, offset, out.length - offset, raw, 0, raw.length, level);
+        if (Zstd.isError(size)) {
+            throw new IllegalStateException("Compression failed: " + Zstd.getErrorName(size));
+        }
+        if (offset + size > raw.length) {
+            byte[] stored = new byte[raw.length + 1];
+            stored[0] = STORED;
+            System.arraycopy(raw, 0, stored, 1, raw.length);
+            return stored;
+        }
+        if (dictionary != null) {
+            out[0] = ZSTD_DICTIONARY;
+            writeInt(out, 1, dictionary.id);
+        } else {
+            out[0] = ZSTD;
+        }
+        return Arrays.copyOf(out, offset + (int) size);
+    }
+
+    public byte[] decode(byte[] stored) {
+        if (stored.length == 0) {
+            return stored;
+        }
+        switch (stored[0]) {
+            case STORED:
+                return Arrays.copyOfRange(stored, 1, stored.length);
+            case ZSTD:
+                return decompress(stored, 1, null);
+            case ZSTD_DICTIONARY:
+                return decompress(stored, HEADER_LENGTH, decompressor(readInt(stored, 1)));
+            default:
+                return stored;
+        }
+    }
+
+    /**
+     * Whether a stored value, or its first {@link #HEADER_LENGTH} bytes, is
+     * already in the form {@link #encode} would produce now.
+     */
+    public boolean isCurrent(byte[] header) {
+        if (header.length == 0 || header[0] == STORED) {
+            return true;
+        }
+        Integer dictionaryId = currentDictionaryId();
+        if (header[0] == ZSTD) {
+            return dictionaryId == null;
+        }
+        return header[0] == ZSTD_DICTIONARY && header.length >= HEADER_LENGTH && dictionaryId != null
+                && readInt(header, 1) == dictionaryId;
+    }
+
+    /** Trains a dictionary of at most {@code size} bytes from sample payloads. */
+    public static byte[] train(List<byte[]> samples, int size) {
+        int total = 0;
+        for (byte[] sample : samples) {
+            total += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer(total, size);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+
+    private ZstdDictDecompress decompressor(int id) {
+        return decompressors.computeIfAbsent(id, key -> {
+            byte[] dictionary = dictionaryLoader.apply(key);
+            if (dictionary == null) {
+                throw new IllegalStateException("Unknown compression dictionary " + key);
+            }
+            return new ZstdDictDecompress(dictionary);
+        });
+    }
+
+    private static byte[] decompress(byte[] stored, int offset, ZstdDictDecompress dictionary) {
+        int length = stored.length - offset;
+        long size = Zstd.getFrameContentSize(stored, offset, length);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Unreadable compressed payload");
+        }
+        byte[] raw = new byte[(int) size];
+        long read = dictionary != null
+                ? Zstd.decompressFastDict(raw, 0, stored, offset, length, dictionary)
+                : Zstd.decompressByteArray(raw, 0, raw.length, stored, offset, length);
+        if (Zstd.isError(read) || read != size) {
+            throw new IllegalStateException("Decompression failed: "
+                    + (Zstd.isError(read) ? Zstd.getErrorName(read) : "truncated"));
+        }
+        return raw;
+    }
+
+    private static void writeInt(byte[] out, int offset, int value) {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] in, int offset) {
+        return (in[offset] & 0xff) << 24 | (in[offset + 1] & 0xff) << 16 | (in[offset + 2] & 0xff) << 8
+                | in[offset + 3] & 0xff;
+    }
+
+    private static final class Dictionary {
+        private final int id;
+        private final ZstdDictCompress compress;
+
+        private Dictionary(int id, ZstdDictCompress compress) {
+            this.id = id;
+            this.compress = compress;
+        }
+    }
+}
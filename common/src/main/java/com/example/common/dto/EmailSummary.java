@@ -0,0 +1,25 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns a mailbox listing shows for one email. Read with a constructor
+ * expression so list queries never load the body or the user and folder rows.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailSummary {
+    private Long id;
+    private String sender;
+    private String subject;
+    private String snippet;
+    private LocalDateTime receivedAt;
+    private Long sizeBytes;
+    private boolean read;
+    private boolean hasAttachments;
+}
@@ -0,0 +1,20 @@
+package com.example.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A folder with its message counters, as returned by folder listings.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FolderSummary {
+    private Long id;
+    private String name;
+    private Long parentId;
+    private long totalCount;
+    private long unreadCount;
+    private long sizeBytes;
+}
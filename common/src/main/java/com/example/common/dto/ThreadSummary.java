@@ -0,0 +1,36 @@
+package com.example.common.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A conversation as shown in thread listings: its latest email and how many
+ * emails, and unread emails, it has.
+ */
+@Data
+@NoArgsConstructor
+public class ThreadSummary {
+    private Long threadId;
+    private Long latestEmailId;
+    private String subject;
+    private String sender;
+    private String snippet;
+    private LocalDateTime latestAt;
+    private long messageCount;
+    private long unreadCount;
+
+    /** Emails stored before threading have no thread and count as a thread of their own. */
+    public ThreadSummary(Long threadId, Long latestEmailId, String subject, String sender, String snippet,
+            LocalDateTime latestAt, boolean latestRead, long messageCount, long unreadCount) {
+        this.threadId = threadId != null ? threadId : latestEmailId;
+        this.latestEmailId = latestEmailId;
+        this.subject = subject;
+        this.sender = sender;
+        this.snippet = snippet;
+        this.latestAt = latestAt;
+        this.messageCount = threadId != null ? messageCount : 1;
+        this.unreadCount = threadId != null ? unreadCount : latestRead ? 0 : 1;
+    }
+}
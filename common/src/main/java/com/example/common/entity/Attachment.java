@@ -4,11 +4,13 @@ import jakarta.persistence.*;
 import lombok.Data;
 
 @Entity
-@Table(name = "attachments")
+@Table(name = "attachments", indexes = @Index(name = "idx_attachments_email", columnList = "email_id"))
 @Data
 public class Attachment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled like Email's, so inserts can be batched
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "attachments_id_seq")
+    @SequenceGenerator(name = "attachments_id_seq", sequenceName = "attachments_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -18,6 +20,7 @@ public class Attachment {
     private String filename;
     private String contentType;
 
-    @Lob
+    // bytea, as in init.sql, so downloads can read it in chunks
+    @Column(length = Integer.MAX_VALUE)
     private byte[] data;
 }
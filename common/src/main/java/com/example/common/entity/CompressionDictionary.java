@@ -0,0 +1,30 @@
+package com.example.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A zstd dictionary trained on stored messages. Compressed payloads name the
+ * dictionary they were written with, so rows are never deleted.
+ */
+@Entity
+@Table(name = "compression_dictionaries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompressionDictionary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, length = Integer.MAX_VALUE)
+    private byte[] data;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -1,12 +1,18 @@
 package com.example.common.entity;
 
+import com.example.common.cache.ReferenceDataCache;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.time.LocalDateTime;
 
 @Data
 @Entity
 @Table(name = "domains")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.DOMAINS)
 public class Domain {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
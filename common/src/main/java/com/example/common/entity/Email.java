@@ -6,18 +6,34 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "emails")
+@Table(name = "emails", indexes = {
+        // Keyset pagination of a folder and of the whole mailbox, newest first
+        @Index(name = "idx_emails_user_folder_received", columnList = "user_id, folder_id, received_at DESC, id DESC"),
+        @Index(name = "idx_emails_user_received", columnList = "user_id, received_at DESC, id DESC"),
+        // Admin statistics read the emails received recently across all users
+        @Index(name = "idx_emails_received", columnList = "received_at"),
+        // Threading: parent lookup by Message-ID at ingest, latest email and counts per conversation
+        @Index(name = "idx_emails_user_message_id", columnList = "user_id, message_id"),
+        @Index(name = "idx_emails_user_thread_received", columnList = "user_id, thread_id, received_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Email {
 
+    public static final int SNIPPET_LENGTH = 160;
+    public static final int MESSAGE_ID_LENGTH = 255;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids come from a sequence in blocks of 50 so inserts can be batched; the
+    // sequence's INCREMENT BY must match the allocation size (see init.sql)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "emails_id_seq")
+    @SequenceGenerator(name = "emails_id_seq", sequenceName = "emails_id_seq", allocationSize = 50)
     private Long id;
 
     private String sender;
@@ -30,9 +46,30 @@ public class Email {
     @Column(name = "body_text", columnDefinition = "TEXT")
     private String body;
 
+    @Column(length = SNIPPET_LENGTH)
+    private String snippet;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    /** Message-ID header without angle brackets. */
+    @Column(name = "message_id", length = MESSAGE_ID_LENGTH)
+    private String messageId;
+
+    /** Conversation of this email: the id of its first email, assigned at ingest. */
+    @Column(name = "thread_id")
+    private Long threadId;
+
+    @Column(name = "is_read")
+    private boolean read;
+
     @Column(name = "received_at")
     private LocalDateTime receivedAt;
 
+    /** When the email was last moved to another folder; null while it is in the folder it was delivered to. */
+    @Column(name = "folder_changed_at")
+    private LocalDateTime folderChangedAt;
+
     @ManyToOne
     @JoinColumn(name = "user_id")
     private User user;
@@ -44,5 +81,33 @@ public class Email {
     @PrePersist
     protected void onCreate() {
         receivedAt = LocalDateTime.now();
+        if (snippet == null) {
+            snippet = snippetOf(body);
+        }
+        if (sizeBytes == null && body != null) {
+            sizeBytes = (long) body.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    /** The start of the body with runs of whitespace collapsed, as shown in listings. */
+    public static String snippetOf(String body) {
+        if (body == null) {
+            return null;
+        }
+        StringBuilder snippet = new StringBuilder(SNIPPET_LENGTH);
+        boolean space = false;
+        for (int i = 0; i < body.length() && snippet.length() < SNIPPET_LENGTH; i++) {
+            char c = body.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = snippet.length() > 0;
+            } else {
+                if (space) {
+                    snippet.append(' ');
+                    space = false;
+                }
+                snippet.append(c);
+            }
+        }
+        return snippet.length() > SNIPPET_LENGTH ? snippet.substring(0, SNIPPET_LENGTH) : snippet.toString();
     }
 }
@@ -1,16 +1,23 @@
 package com.example.common.entity;
 
+import com.example.common.cache.ReferenceDataCache;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Data
 @Entity
 @Table(name = "folders", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"user_id", "name", "parent_id"})
 })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.FOLDERS)
 public class Folder {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled like Email's, so inserts can be batched
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "folders_id_seq")
+    @SequenceGenerator(name = "folders_id_seq", sequenceName = "folders_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -0,0 +1,33 @@
+package com.example.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Message totals of one folder, kept up to date by the code that files,
+ * reads, moves and deletes emails in the same transaction as the change.
+ * Only ever modified through the delta update in
+ * {@link com.example.common.repository.FolderCounterRepository}.
+ */
+@Entity
+@Table(name = "folder_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FolderCounter {
+
+    @Id
+    @Column(name = "folder_id")
+    private Long folderId;
+
+    @Column(name = "total_count", nullable = false)
+    private long totalCount;
+
+    @Column(name = "unread_count", nullable = false)
+    private long unreadCount;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+}
@@ -0,0 +1,62 @@
+package com.example.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A change to a user's mailbox or settings that connected clients and the
+ * other services are told about, written in the same transaction as the
+ * change itself. The id orders events and is what clients resume from.
+ */
+@Entity
+@Table(name = "mail_events", indexes = {
+        @Index(name = "idx_mail_events_user", columnList = "user_id, id"),
+        // Cache invalidation polls read one or two types over the lookback
+        @Index(name = "idx_mail_events_type", columnList = "type, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MailEvent {
+
+    public static final String NEW_MESSAGE = "NEW_MESSAGE";
+    public static final String FLAG_CHANGED = "FLAG_CHANGED";
+    public static final String FOLDER_COUNTERS = "FOLDER_COUNTERS";
+    public static final String SETTINGS_CHANGED = "SETTINGS_CHANGED";
+    public static final String USER_CHANGED = "USER_CHANGED";
+    public static final String FOLDERS_CHANGED = "FOLDERS_CHANGED";
+
+    /** The types sent to clients; the others only invalidate the services' caches. */
+    public static final List<String> CLIENT_TYPES = List.of(NEW_MESSAGE, FLAG_CHANGED, FOLDER_COUNTERS);
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 32)
+    private String type;
+
+    @Column(name = "email_id")
+    private Long emailId;
+
+    @Column(name = "folder_id")
+    private Long folderId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
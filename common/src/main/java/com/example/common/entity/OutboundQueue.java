@@ -1,15 +1,29 @@
 package com.example.common.entity;
 
+import com.example.common.codec.CompressedBytes;
+import com.example.common.codec.CompressedBytesConverter;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Immutable;
 import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "outbound_queue")
+// Status updates must not rewrite the payload
+@DynamicUpdate
+@Table(name = "outbound_queue", indexes = {
+        // Queue worker polling and the admin statistics count of unsent rows
+        @Index(name = "idx_outbound_queue_status", columnList = "status, next_retry_at")
+})
 public class OutboundQueue {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled like Email's, so inserts can be batched
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbound_queue_id_seq")
+    @SequenceGenerator(name = "outbound_queue_id_seq", sequenceName = "outbound_queue_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -18,8 +32,13 @@ public class OutboundQueue {
     @Column(nullable = false)
     private String recipient;
 
+    // Compressed by PayloadCodec; decompressed on the first getEmailData() after loading
+    @Convert(converter = CompressedBytesConverter.class)
+    @Immutable
     @Column(name = "email_data", nullable = false, columnDefinition = "BYTEA")
-    private byte[] emailData;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CompressedBytes emailData;
 
     @Column(length = 20)
     private String status = "PENDING";
@@ -33,6 +52,20 @@ public class OutboundQueue {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
 
+    @Column(name = "correlation_id", length = 64)
+    private String correlationId;
+
+    @Column(name = "idempotency_key", length = 200, unique = true)
+    private String idempotencyKey;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    public byte[] getEmailData() {
+        return emailData != null ? emailData.bytes() : null;
+    }
+
+    public void setEmailData(byte[] emailData) {
+        this.emailData = CompressedBytes.of(emailData);
+    }
 }
@@ -0,0 +1,26 @@
+package com.example.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The original RFC 822 bytes of a received email, kept apart from
+ * {@link Email} so loading an email never pulls the raw message with it.
+ * Reads go through {@link com.example.common.repository.RawMessageRepository#readChunk}.
+ */
+@Entity
+@Table(name = "raw_messages")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RawMessage {
+
+    @Id
+    @Column(name = "email_id")
+    private Long emailId;
+
+    @Column(name = "data", nullable = false, length = Integer.MAX_VALUE)
+    private byte[] data;
+}
@@ -1,13 +1,18 @@
 package com.example.common.entity;
 
+import com.example.common.cache.ReferenceDataCache;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.USERS)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,4 +32,8 @@ public class User {
     @Column(nullable = false)
     @Builder.Default
     private String roles = "USER";
+
+    /** Domain of the mailbox, needed when the username is only the local part. */
+    @Column(name = "domain_id")
+    private Long domainId;
 }
@@ -0,0 +1,74 @@
+package com.example.common.event;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Position of a reader of {@code mail_events} that reads new events by id.
+ *
+ * Event ids come from an identity column: they are handed out at insert but
+ * the rows only become visible at commit, so an event can commit after one
+ * with a higher id has already been read. A reader that only asked for ids
+ * above the highest one read would skip it for good. Instead every read
+ * starts from {@link #from()}, the highest id read {@code lookbackMs} ago,
+ * and {@link #add(long)} tells which of the events read again are new. An
+ * event that commits more than the lookback after a higher id was read is
+ * still missed, so the lookback must exceed the longest transaction that
+ * records an event.
+ *
+ * Thread-safe.
+ */
+public class MailEventTail {
+
+    private static final long MARK_INTERVAL_MS = 1000;
+
+    private final long lookbackMs;
+    // {time, highest id read at that time}, oldest first, one per MARK_INTERVAL_MS
+    private final Deque<long[]> marks = new ArrayDeque<>();
+    // Ids above from that were already returned as new
+    private final NavigableSet<Long> seen = new TreeSet<>();
+    private long from;
+    private long last;
+
+    /** @param startId highest id already dealt with, usually the newest event at startup */
+    public MailEventTail(long startId, long lookbackMs) {
+        this.lookbackMs = lookbackMs;
+        this.from = startId;
+        this.last = startId;
+        marks.add(new long[] { System.currentTimeMillis(), startId });
+    }
+
+    /** Id after which to read: events at or below it have all been seen or are given up on. */
+    public synchronized long from() {
+        advance();
+        return from;
+    }
+
+    /** Returns whether the event is new, that is above {@link #from()} and not added before. */
+    public synchronized boolean add(long eventId) {
+        advance();
+        if (eventId <= from || !seen.add(eventId)) {
+            return false;
+        }
+        last = Math.max(last, eventId);
+        return true;
+    }
+
+    private void advance() {
+        long now = System.currentTimeMillis();
+        long[] expired = null;
+        while (!marks.isEmpty() && now - marks.peekFirst()[0] >= lookbackMs) {
+            expired = marks.pollFirst();
+        }
+        // What had been read by the start of the lookback is final
+        if (expired != null && expired[1] > from) {
+            from = expired[1];
+            seen.headSet(from, true).clear();
+        }
+        if (marks.isEmpty() || now - marks.peekLast()[0] >= MARK_INTERVAL_MS) {
+            marks.add(new long[] { now, last });
+        }
+    }
+}
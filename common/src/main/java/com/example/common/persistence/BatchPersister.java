@@ -0,0 +1,62 @@
+package com.example.common.persistence;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts entities in the caller's transaction as JDBC batches.
+ *
+ * Hibernate can only batch inserts of entities whose ids it assigns before
+ * the insert, which is why the entities written in bulk use pooled sequences
+ * rather than identity columns: ids are set by {@link #persistAll} itself and
+ * the rows go out with the next flush. With {@code hibernate.order_inserts}
+ * rows of the same table share a batch even when persisted interleaved.
+ *
+ * Every {@code batchSize} entities the context is flushed and the flushed
+ * entities are detached, so memory stays bounded however many rows are
+ * written; entities the caller loaded itself stay managed. Constraint
+ * violations surface as Spring's {@code DataIntegrityViolationException}.
+ */
+public class BatchPersister {
+
+    private static final HibernateJpaDialect DIALECT = new HibernateJpaDialect();
+
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    public BatchPersister(EntityManager entityManager, int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Persists the entities, assigning their ids. The last partial batch is
+     * left to the transaction's own flush and stays managed, so callers may
+     * still change those entities before commit.
+     */
+    public void persistAll(Iterable<?> entities) {
+        List<Object> batch = new ArrayList<>(batchSize);
+        for (Object entity : entities) {
+            entityManager.persist(entity);
+            batch.add(entity);
+            if (batch.size() == batchSize) {
+                flush();
+                batch.forEach(entityManager::detach);
+                batch.clear();
+            }
+        }
+    }
+
+    /** Sends pending inserts now, translating constraint violations. */
+    public void flush() {
+        try {
+            entityManager.flush();
+        } catch (RuntimeException e) {
+            throw DataAccessUtils.translateIfNecessary(e, DIALECT);
+        }
+    }
+}
@@ -2,6 +2,35 @@ package com.example.common.repository;
 
 import com.example.common.entity.Attachment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
+
+        /** Attachment metadata without its data. */
+        interface AttachmentInfo {
+                Long getId();
+
+                Long getEmailId();
+
+                Long getOwnerId();
+
+                String getFilename();
+
+                String getContentType();
+
+                Long getSize();
+        }
+
+        @Query(value = "SELECT a.id AS id, a.email_id AS emailId, e.user_id AS ownerId, a.filename AS filename, "
+                        + "a.content_type AS contentType, OCTET_LENGTH(a.data) AS size "
+                        + "FROM attachments a JOIN emails e ON e.id = a.email_id WHERE a.id = :id", nativeQuery = true)
+        Optional<AttachmentInfo> findInfo(@Param("id") Long id);
+
+        // offset is 1-based, as in SQL
+        @Query(value = "SELECT SUBSTRING(data FROM :offset FOR :length) FROM attachments WHERE id = :id",
+                        nativeQuery = true)
+        byte[] readChunk(@Param("id") Long id, @Param("offset") long offset, @Param("length") int length);
 }
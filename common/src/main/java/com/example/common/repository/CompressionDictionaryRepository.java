@@ -0,0 +1,11 @@
+package com.example.common.repository;
+
+import com.example.common.entity.CompressionDictionary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface CompressionDictionaryRepository extends JpaRepository<CompressionDictionary, Integer> {
+
+        @Query("SELECT MAX(d.id) FROM CompressionDictionary d")
+        Integer findLatestId();
+}
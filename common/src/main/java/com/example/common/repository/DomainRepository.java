@@ -1,9 +1,16 @@
 package com.example.common.repository;
 
+import com.example.common.cache.ReferenceDataCache;
 import com.example.common.entity.Domain;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import java.util.Optional;
 
 public interface DomainRepository extends JpaRepository<Domain, Long> {
+    /** Served from the query cache; see {@link ReferenceDataCache}. */
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.DOMAIN_QUERIES) })
     Optional<Domain> findByName(String name);
 }
@@ -1,18 +1,122 @@
 package com.example.common.repository;
 
+import com.example.common.dto.EmailSummary;
+import com.example.common.dto.ThreadSummary;
 import com.example.common.entity.Email;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface EmailRepository extends JpaRepository<Email, Long> {
         List<Email> findByRecipient(String recipient);
 
-        org.springframework.data.domain.Page<Email> findByUser_Id(Long userId,
-                        org.springframework.data.domain.Pageable pageable);
+        // Listing projection: no body, user or folder columns. Rows written before the snippet column
+        // existed fall back to the start of the body.
+        String SUMMARY = "SELECT new com.example.common.dto.EmailSummary(e.id, e.sender, e.subject, "
+                        + "COALESCE(e.snippet, SUBSTRING(e.body, 1, " + Email.SNIPPET_LENGTH + ")), e.receivedAt, "
+                        + "e.sizeBytes, e.read, "
+                        + "CASE WHEN EXISTS (SELECT 1 FROM Attachment a WHERE a.email = e) THEN true ELSE false END) "
+                        + "FROM Email e ";
 
-        org.springframework.data.domain.Page<Email> findByUser_IdAndFolder_Id(Long userId, Long folderId,
-                        org.springframework.data.domain.Pageable pageable);
+        @Query(value = SUMMARY + "WHERE e.user.id = :userId",
+                        countQuery = "SELECT COUNT(e) FROM Email e WHERE e.user.id = :userId")
+        Page<EmailSummary> findSummariesByUser(@Param("userId") Long userId, Pageable pageable);
+
+        @Query(value = SUMMARY + "WHERE e.user.id = :userId AND e.folder.id = :folderId",
+                        countQuery = "SELECT COUNT(e) FROM Email e WHERE e.user.id = :userId AND e.folder.id = :folderId")
+        Page<EmailSummary> findSummariesByUserAndFolder(@Param("userId") Long userId,
+                        @Param("folderId") Long folderId, Pageable pageable);
+
+        boolean existsByIdAndUser_Id(Long id, Long userId);
+
+        @Query("SELECT e.id FROM Email e WHERE e.id IN :ids")
+        List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+        /** Locks the email row so concurrent changes cannot count it twice. */
+        @Lock(LockModeType.PESSIMISTIC_WRITE)
+        @Query("SELECT e FROM Email e WHERE e.id = :id AND e.user.id = :userId")
+        Optional<Email> findForUpdate(@Param("id") Long id, @Param("userId") Long userId);
+
+        @Query(SUMMARY + "WHERE e.id = :id")
+        Optional<EmailSummary> findSummary(@Param("id") Long id);
+
+        long countByUser_Id(Long userId);
+
+        long countByUser_IdAndFolder_Id(Long userId, Long folderId);
+
+        boolean existsByFolder_Id(Long folderId);
+
+        // Keyset pagination on (received_at, id) descending; the page size comes from the Pageable.
+        // "receivedAt <= :receivedAt" is implied by the seek predicate but gives the index scan its start bound.
+        @Query(SUMMARY + "WHERE e.user.id = :userId ORDER BY e.receivedAt DESC, e.id DESC")
+        List<EmailSummary> findFirstPage(@Param("userId") Long userId, Pageable limit);
+
+        @Query(SUMMARY + "WHERE e.user.id = :userId AND e.receivedAt <= :receivedAt "
+                        + "AND (e.receivedAt < :receivedAt OR e.id < :id) ORDER BY e.receivedAt DESC, e.id DESC")
+        List<EmailSummary> findPageAfter(@Param("userId") Long userId, @Param("receivedAt") LocalDateTime receivedAt,
+                        @Param("id") Long id, Pageable limit);
+
+        @Query(SUMMARY + "WHERE e.user.id = :userId AND e.folder.id = :folderId "
+                        + "ORDER BY e.receivedAt DESC, e.id DESC")
+        List<EmailSummary> findFirstPageInFolder(@Param("userId") Long userId, @Param("folderId") Long folderId,
+                        Pageable limit);
+
+        @Query(SUMMARY + "WHERE e.user.id = :userId AND e.folder.id = :folderId "
+                        + "AND e.receivedAt <= :receivedAt AND (e.receivedAt < :receivedAt OR e.id < :id) "
+                        + "ORDER BY e.receivedAt DESC, e.id DESC")
+        List<EmailSummary> findPageAfterInFolder(@Param("userId") Long userId, @Param("folderId") Long folderId,
+                        @Param("receivedAt") LocalDateTime receivedAt, @Param("id") Long id, Pageable limit);
+
+        /** Thread of an already stored email, looked up by its Message-ID. */
+        interface ThreadRef {
+                String getMessageId();
+
+                Long getThreadId();
+        }
+
+        @Query("SELECT e.messageId AS messageId, e.threadId AS threadId FROM Email e "
+                        + "WHERE e.user.id = :userId AND e.messageId IN :messageIds AND e.threadId IS NOT NULL")
+        List<ThreadRef> findThreadRefs(@Param("userId") Long userId, @Param("messageIds") Collection<String> messageIds);
+
+        /** As {@link #findThreadRefs} for emails without an owner, which are scoped by recipient. */
+        @Query("SELECT e.messageId AS messageId, e.threadId AS threadId FROM Email e "
+                        + "WHERE e.user IS NULL AND e.recipient = :recipient AND e.messageId IN :messageIds "
+                        + "AND e.threadId IS NOT NULL")
+        List<ThreadRef> findUnownedThreadRefs(@Param("recipient") String recipient,
+                        @Param("messageIds") Collection<String> messageIds);
+
+        // One row per conversation: walks the mailbox newest first and keeps each thread's latest email in the
+        // page order (received_at, id), checked with an index probe; counts are only computed for the rows returned
+        String THREAD_SUMMARY = "SELECT new com.example.common.dto.ThreadSummary(e.threadId, e.id, e.subject, "
+                        + "e.sender, COALESCE(e.snippet, SUBSTRING(e.body, 1, " + Email.SNIPPET_LENGTH + ")), "
+                        + "e.receivedAt, e.read, "
+                        + "(SELECT COUNT(c) FROM Email c WHERE c.user.id = :userId AND c.threadId = e.threadId), "
+                        + "(SELECT COUNT(c) FROM Email c WHERE c.user.id = :userId AND c.threadId = e.threadId "
+                        + "AND c.read = false)) "
+                        + "FROM Email e WHERE e.user.id = :userId AND (e.threadId IS NULL OR NOT EXISTS "
+                        + "(SELECT m FROM Email m WHERE m.user.id = :userId AND m.threadId = e.threadId "
+                        + "AND (m.receivedAt > e.receivedAt OR (m.receivedAt = e.receivedAt AND m.id > e.id)))) ";
+
+        @Query(THREAD_SUMMARY + "ORDER BY e.receivedAt DESC, e.id DESC")
+        List<ThreadSummary> findFirstThreadPage(@Param("userId") Long userId, Pageable limit);
+
+        @Query(THREAD_SUMMARY + "AND e.receivedAt <= :receivedAt AND (e.receivedAt < :receivedAt OR e.id < :id) "
+                        + "ORDER BY e.receivedAt DESC, e.id DESC")
+        List<ThreadSummary> findThreadPageAfter(@Param("userId") Long userId,
+                        @Param("receivedAt") LocalDateTime receivedAt, @Param("id") Long id, Pageable limit);
+
+        @Query(SUMMARY + "WHERE e.user.id = :userId AND (e.threadId = :threadId OR e.id = :threadId) "
+                        + "ORDER BY e.receivedAt, e.id")
+        List<EmailSummary> findThread(@Param("userId") Long userId, @Param("threadId") Long threadId);
 }
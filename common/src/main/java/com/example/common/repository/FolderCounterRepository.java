@@ -0,0 +1,69 @@
+package com.example.common.repository;
+
+import com.example.common.entity.Email;
+import com.example.common.entity.FolderCounter;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+public interface FolderCounterRepository extends JpaRepository<FolderCounter, Long> {
+
+        /** Adds to the counters of a folder; must run in the transaction that changed the emails. */
+        @Modifying
+        @Query("UPDATE FolderCounter c SET c.totalCount = c.totalCount + :total, "
+                        + "c.unreadCount = c.unreadCount + :unread, c.sizeBytes = c.sizeBytes + :size "
+                        + "WHERE c.folderId = :folderId")
+        int applyDelta(@Param("folderId") Long folderId, @Param("total") long total, @Param("unread") long unread,
+                        @Param("size") long size);
+
+        /** Counts from scratch for folders that have no counter row yet. */
+        @Modifying
+        @Query(value = "INSERT INTO folder_counters (folder_id, total_count, unread_count, size_bytes) "
+                        + "SELECT f.id, COUNT(e.id), "
+                        + "SUM(CASE WHEN e.id IS NOT NULL AND COALESCE(e.is_read, FALSE) = FALSE THEN 1 ELSE 0 END), "
+                        + "COALESCE(SUM(e.size_bytes), 0) "
+                        + "FROM folders f LEFT JOIN emails e ON e.folder_id = f.id "
+                        + "WHERE NOT EXISTS (SELECT 1 FROM folder_counters c WHERE c.folder_id = f.id) "
+                        + "GROUP BY f.id", nativeQuery = true)
+        // Without its table, Hibernate would clear every second-level cache region after the insert
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "folder_counters"))
+        int createMissing();
+
+        default void added(Email email) {
+                if (email.getFolder() != null) {
+                        applyDelta(email.getFolder().getId(), 1, email.isRead() ? 0 : 1, sizeOf(email));
+                }
+        }
+
+        default void removed(Email email) {
+                if (email.getFolder() != null) {
+                        applyDelta(email.getFolder().getId(), -1, email.isRead() ? 0 : -1, -sizeOf(email));
+                }
+        }
+
+        /**
+         * Moves the email's counts from its folder to the target. The two rows
+         * are updated in folder id order, as every transaction changing several
+         * counters must, so that opposite moves cannot deadlock.
+         */
+        default void moved(Email email, Long targetFolderId) {
+                Long sourceId = email.getFolder() != null ? email.getFolder().getId() : null;
+                long unread = email.isRead() ? 0 : 1;
+                long size = sizeOf(email);
+                if (sourceId != null && sourceId < targetFolderId) {
+                        applyDelta(sourceId, -1, -unread, -size);
+                }
+                applyDelta(targetFolderId, 1, unread, size);
+                if (sourceId != null && sourceId > targetFolderId) {
+                        applyDelta(sourceId, -1, -unread, -size);
+                }
+        }
+
+        private static long sizeOf(Email email) {
+                return email.getSizeBytes() != null ? email.getSizeBytes() : 0;
+        }
+}
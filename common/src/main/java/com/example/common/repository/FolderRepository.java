@@ -1,13 +1,49 @@
 package com.example.common.repository;
 
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.dto.FolderSummary;
 import com.example.common.entity.Folder;
 import com.example.common.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
 import java.util.List;
 import java.util.Optional;
 
 public interface FolderRepository extends JpaRepository<Folder, Long> {
+
+    /** A folder without its user and parent entities. */
+    interface FolderRow {
+        Long getId();
+
+        String getName();
+
+        Long getParentId();
+    }
+
     List<Folder> findByUser(User user);
 
+    List<Folder> findByUser_Id(Long userId);
+
     Optional<Folder> findByUserAndNameAndParent(User user, String name, Folder parent);
+
+    /** Served from the query cache; see {@link ReferenceDataCache}. */
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.FOLDER_QUERIES) })
+    Optional<Folder> findByIdAndUser_Id(Long id, Long userId);
+
+    @Query("SELECT new com.example.common.dto.FolderSummary(f.id, f.name, f.parent.id, "
+            + "COALESCE(c.totalCount, 0), COALESCE(c.unreadCount, 0), COALESCE(c.sizeBytes, 0)) "
+            + "FROM Folder f LEFT JOIN FolderCounter c ON c.folderId = f.id WHERE f.user.id = :userId ORDER BY f.id")
+    List<FolderSummary> findSummariesByUser(@Param("userId") Long userId);
+
+    @Query("SELECT f.id AS id, f.name AS name, f.parent.id AS parentId FROM Folder f WHERE f.user.id = :userId "
+            + "ORDER BY f.name, f.id")
+    List<FolderRow> findRowsByUser(@Param("userId") Long userId);
+
+    boolean existsByParent_Id(Long parentId);
 }
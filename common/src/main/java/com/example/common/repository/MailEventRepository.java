@@ -0,0 +1,47 @@
+package com.example.common.repository;
+
+import com.example.common.entity.MailEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface MailEventRepository extends JpaRepository<MailEvent, Long> {
+
+        /** Records an event; must run in the transaction that made the change. */
+        default void record(Long userId, String type, Long emailId, Long folderId) {
+                if (userId != null) {
+                        save(MailEvent.builder().userId(userId).type(type).emailId(emailId).folderId(folderId).build());
+                }
+        }
+
+        List<MailEvent> findByUserIdAndTypeInAndIdGreaterThanOrderByIdAsc(Long userId, Collection<String> types, Long id,
+                        Pageable limit);
+
+        /**
+         * The user's events of the given types after the given id, and also
+         * those created since the given time whatever their id.
+         */
+        @Query("SELECT e FROM MailEvent e WHERE e.userId = :userId AND e.type IN :types "
+                        + "AND (e.id > :after OR e.createdAt >= :since) ORDER BY e.id")
+        List<MailEvent> findByUserIdAfter(@Param("userId") Long userId, @Param("types") Collection<String> types,
+                        @Param("after") long after, @Param("since") LocalDateTime since, Pageable limit);
+
+        List<MailEvent> findByIdGreaterThanOrderByIdAsc(Long id, Pageable limit);
+
+        @Query("SELECT COALESCE(MAX(e.id), 0) FROM MailEvent e")
+        long findLastId();
+
+        @Query("SELECT e FROM MailEvent e WHERE e.id > :after AND e.id <= :upTo AND e.type IN :types ORDER BY e.id")
+        List<MailEvent> findByTypes(@Param("types") Collection<String> types, @Param("after") long after,
+                        @Param("upTo") long upTo);
+
+        @Modifying
+        @Query("DELETE FROM MailEvent e WHERE e.createdAt < :cutoff")
+        int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
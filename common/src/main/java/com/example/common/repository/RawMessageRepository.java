@@ -0,0 +1,17 @@
+package com.example.common.repository;
+
+import com.example.common.entity.RawMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface RawMessageRepository extends JpaRepository<RawMessage, Long> {
+
+        @Query(value = "SELECT OCTET_LENGTH(data) FROM raw_messages WHERE email_id = :emailId", nativeQuery = true)
+        Long findLength(@Param("emailId") Long emailId);
+
+        // offset is 1-based, as in SQL
+        @Query(value = "SELECT SUBSTRING(data FROM :offset FOR :length) FROM raw_messages WHERE email_id = :emailId",
+                        nativeQuery = true)
+        byte[] readChunk(@Param("emailId") Long emailId, @Param("offset") long offset, @Param("length") int length);
+}
@@ -7,4 +7,6 @@ import java.util.Optional;
 
 public interface SettingsRepository extends JpaRepository<Settings, Long> {
     Optional<Settings> findByUser(User user);
+
+    Optional<Settings> findByUser_Id(Long userId);
 }
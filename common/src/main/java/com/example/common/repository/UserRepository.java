@@ -1,12 +1,44 @@
 package com.example.common.repository;
 
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.dto.UserSummary;
 import com.example.common.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+    /** Served from the query cache; see {@link ReferenceDataCache}. */
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.USER_QUERIES) })
     Optional<User> findByUsername(String username);
+
+    /**
+     * Users after {@code afterId} in id order, read through the primary key.
+     * A lower-case domain selects the users with that {@code domain_id} and,
+     * among users without one, those whose lower-cased username matches
+     * {@code usernamePattern}; pass null to match every user. Both patterns
+     * are LIKE patterns with {@code \} as escape. Roles are matched against
+     * the comma-separated list wrapped in commas, so {@code %,ADMIN,%} selects
+     * admins; pass {@code %} to match every user.
+     */
+    @Query("SELECT new com.example.common.dto.UserSummary(u.id, u.username, u.roles) FROM User u "
+            + "LEFT JOIN Domain d ON d.id = u.domainId "
+            + "WHERE u.id > :afterId AND (:domain IS NULL "
+            + "OR (d.id IS NOT NULL AND LOWER(d.name) = :domain) "
+            + "OR (d.id IS NULL AND LOWER(u.username) LIKE :usernamePattern ESCAPE '\\')) "
+            + "AND CONCAT(',', REPLACE(u.roles, ' ', ''), ',') LIKE :rolesPattern ESCAPE '\\' "
+            + "ORDER BY u.id")
+    List<UserSummary> findSummariesAfter(@Param("afterId") long afterId, @Param("domain") String domain,
+            @Param("usernamePattern") String usernamePattern, @Param("rolesPattern") String rolesPattern,
+            Pageable pageable);
 }
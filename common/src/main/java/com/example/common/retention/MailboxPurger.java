@@ -0,0 +1,112 @@
+package com.example.common.retention;
+
+import com.example.common.entity.MailEvent;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Deletes the emails of a folder in chunks of {@code chunkSize}, each in its
+ * own transaction, so no transaction holds many row locks or writes much WAL
+ * at once. A chunk locks its rows, deletes their attachments, stored raw
+ * messages and the emails themselves with one statement each, and applies
+ * the folder counter delta and its {@code FOLDER_COUNTERS} event in the same
+ * transaction. Between chunks the purger pauses for {@code pauseMs}.
+ *
+ * Messages kept in a segment log are reclaimed by its compaction once their
+ * emails are gone.
+ */
+public class MailboxPurger {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionOperations transactions;
+    private final FolderCounterRepository folderCounterRepository;
+    private final MailEventRepository mailEventRepository;
+    private final int chunkSize;
+    private final long pauseMs;
+
+    public MailboxPurger(NamedParameterJdbcTemplate namedParameterJdbcTemplate, TransactionOperations transactions,
+            FolderCounterRepository folderCounterRepository, MailEventRepository mailEventRepository,
+            int chunkSize, long pauseMs) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactions = transactions;
+        this.folderCounterRepository = folderCounterRepository;
+        this.mailEventRepository = mailEventRepository;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+    }
+
+    /**
+     * Deletes the folder's emails filed there before the cutoff, oldest first,
+     * or all of them when it is null. An email is filed in a folder when it is
+     * moved there, or when it is received if it was never moved.
+     *
+     * @param onChunk told the number deleted after every chunk that deleted any
+     * @return the number deleted; fewer than matched if the thread was interrupted
+     */
+    public long purgeFolder(long userId, long folderId, LocalDateTime filedBefore, IntConsumer onChunk) {
+        long deleted = 0;
+        while (true) {
+            int chunk = transactions.execute(status -> deleteChunk(userId, folderId, filedBefore));
+            if (chunk > 0) {
+                deleted += chunk;
+                onChunk.accept(chunk);
+            }
+            if (chunk < chunkSize || !pause()) {
+                return deleted;
+            }
+        }
+    }
+
+    private int deleteChunk(long userId, long folderId, LocalDateTime filedBefore) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("folderId", folderId)
+                .addValue("limit", chunkSize);
+        StringBuilder select = new StringBuilder(
+                "SELECT id FROM emails WHERE user_id = :userId AND folder_id = :folderId");
+        if (filedBefore != null) {
+            select.append(" AND COALESCE(folder_changed_at, received_at) < :before");
+            params.addValue("before", Timestamp.valueOf(filedBefore));
+        }
+        // Oldest first, along the folder listing index
+        select.append(" ORDER BY received_at, id LIMIT :limit FOR UPDATE");
+
+        List<Long> locked = namedParameterJdbcTemplate.queryForList(select.toString(), params, Long.class);
+        if (locked.isEmpty()) {
+            return 0;
+        }
+        MapSqlParameterSource chunk = new MapSqlParameterSource("ids", locked);
+        long[] totals = namedParameterJdbcTemplate.queryForObject("SELECT COUNT(*), "
+                + "SUM(CASE WHEN COALESCE(is_read, FALSE) THEN 0 ELSE 1 END), COALESCE(SUM(size_bytes), 0) "
+                + "FROM emails WHERE id IN (:ids)", chunk,
+                (rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2), rs.getLong(3) });
+        namedParameterJdbcTemplate.update("DELETE FROM attachments WHERE email_id IN (:ids)", chunk);
+        namedParameterJdbcTemplate.update("DELETE FROM raw_messages WHERE email_id IN (:ids)", chunk);
+        namedParameterJdbcTemplate.update("DELETE FROM emails WHERE id IN (:ids)", chunk);
+        folderCounterRepository.applyDelta(folderId, -totals[0], -totals[1], -totals[2]);
+        mailEventRepository.record(userId, MailEvent.FOLDER_COUNTERS, null, folderId);
+        return locked.size();
+    }
+
+    /** @return false if interrupted */
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
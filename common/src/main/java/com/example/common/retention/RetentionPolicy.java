@@ -0,0 +1,68 @@
+package com.example.common.retention;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * How long emails are kept in folders of one name, for every mailbox or only
+ * for the mailboxes of one domain (the user's domain, or the part of the
+ * username after the {@code @} for users without one). A domain's policy
+ * replaces the general one for its mailboxes; 0 days keeps emails forever.
+ */
+@Value
+public class RetentionPolicy {
+
+    /** Folder name, matched case-insensitively. */
+    String folder;
+    /** Lower-case domain, or null for every mailbox. */
+    String domain;
+    int days;
+
+    /**
+     * Parses comma-separated {@code Folder=days} and {@code Folder@domain=days}
+     * entries, such as {@code Trash=30,Spam=30,Trash@example.org=90}.
+     *
+     * @throws IllegalArgumentException if an entry is malformed or repeated
+     */
+    public static List<RetentionPolicy> parse(String spec) {
+        List<RetentionPolicy> policies = new ArrayList<>();
+        if (spec == null || spec.isBlank()) {
+            return policies;
+        }
+        for (String entry : spec.split(",")) {
+            int equals = entry.lastIndexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Retention policy without days: " + entry.trim());
+            }
+            String target = entry.substring(0, equals).trim();
+            int at = target.lastIndexOf('@');
+            String folder = (at < 0 ? target : target.substring(0, at)).trim();
+            String domain = at < 0 ? null : target.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+            int days;
+            try {
+                days = Integer.parseInt(entry.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Retention policy days must be a number: " + entry.trim());
+            }
+            if (folder.isEmpty() || (domain != null && domain.isEmpty()) || days < 0) {
+                throw new IllegalArgumentException("Malformed retention policy: " + entry.trim());
+            }
+            RetentionPolicy policy = new RetentionPolicy(folder, domain, days);
+            if (policies.stream().anyMatch(p -> p.getFolder().equalsIgnoreCase(folder)
+                    && Objects.equals(p.getDomain(), domain))) {
+                throw new IllegalArgumentException("Repeated retention policy: " + policy.getName());
+            }
+            policies.add(policy);
+        }
+        return policies;
+    }
+
+    /** {@code Folder} or {@code Folder@domain}, as written in the policy list. */
+    public String getName() {
+        return domain == null ? folder : folder + "@" + domain;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.common.store;
+
+import com.example.common.entity.RawMessage;
+import com.example.common.persistence.BatchPersister;
+import com.example.common.repository.RawMessageRepository;
+
+import java.util.List;
+
+/**
+ * Keeps raw messages in {@code raw_messages}, inserted with the email in the
+ * same transaction and batch, and read in ranges with {@code SUBSTRING}.
+ * Deleting an email deletes its message by cascade.
+ */
+public class DatabaseMessageStore implements MessageStore {
+
+    private final BatchPersister batchPersister;
+    private final RawMessageRepository rawMessageRepository;
+
+    public DatabaseMessageStore(BatchPersister batchPersister, RawMessageRepository rawMessageRepository) {
+        this.batchPersister = batchPersister;
+        this.rawMessageRepository = rawMessageRepository;
+    }
+
+    @Override
+    public void write(long emailId, byte[] message) {
+        batchPersister.persistAll(List.of(new RawMessage(emailId, message)));
+    }
+
+    @Override
+    public Long length(long emailId) {
+        return rawMessageRepository.findLength(emailId);
+    }
+
+    @Override
+    public byte[] read(long emailId, long offset, int length) {
+        return rawMessageRepository.readChunk(emailId, offset + 1, length);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.common.store;
+
+/**
+ * Where the original RFC 822 bytes of received emails are kept, keyed by
+ * email id. Messages are written once, at ingest, and never modified; email
+ * ids are never reused.
+ *
+ * {@link DatabaseMessageStore} keeps them in {@code raw_messages};
+ * {@link SegmentLogMessageStore} keeps them in append-only files outside the
+ * database. Both services must be configured with the same kind of store.
+ */
+public interface MessageStore {
+
+    /** Stores the raw message of an email, in the caller's transaction where the store has one. */
+    void write(long emailId, byte[] message);
+
+    /** Length of the stored message in bytes, or null if there is none. */
+    Long length(long emailId);
+
+    /** Reads up to {@code length} bytes starting at the 0-based {@code offset}. */
+    byte[] read(long emailId, long offset, int length);
+
+    default void start() {
+    }
+
+    default void stop() {
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.common.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps raw messages in append-only segment files, so message bytes never
+ * pass through the database's WAL, vacuum or buffer cache.
+ *
+ * Each record is a 16-byte header (data length, email id, CRC-32 of the
+ * data) followed by the message. Writes append to the newest segment and a
+ * new one is started once it reaches the segment size. An in-memory index
+ * maps email ids to record positions; it is rebuilt on startup by scanning
+ * the segments in order, later records winning, and a torn record at the end
+ * of the newest segment is cut off. Reads are positional ({@code pread}) on
+ * shared channels. Segments are not memory-mapped: a mapping is only released
+ * when garbage collected, which would hold on to the disk space of compacted
+ * segments.
+ *
+ * One instance, in the SMTP service, writes, holding an exclusive lock on a
+ * lock file in the directory so that a second writer fails to start instead
+ * of interleaving its appends; the API service opens the same
+ * directory read-only and indexes new records when it is asked for an id it
+ * does not know, and every refresh interval, which is also when it lets go of
+ * segments the writer has removed. Messages not found in the log are read
+ * from the fallback store, so a database that kept raw messages in
+ * {@code raw_messages} before switching stays readable. Ids still not found
+ * after indexing are remembered until the next scheduled refresh, so reading
+ * such a message chunk by chunk lists the directory only once; the writer
+ * appends a message before the transaction that inserts its email commits,
+ * so an email the API can see is already in the log if it is there at all.
+ *
+ * Compaction runs in the writer: for every sealed segment it asks which of
+ * its emails still exist, and once deleted messages make up the configured
+ * share of the segment, copies the live records to the end of the log and
+ * removes the segment. Only segments sealed for a few minutes are compacted,
+ * so the emails of transactions still in flight are never taken for deleted.
+ * Messages of rolled-back transactions are reclaimed the same way.
+ */
+@Slf4j
+public class SegmentLogMessageStore implements MessageStore {
+
+    /** Which of the given email ids still exist. */
+    @FunctionalInterface
+    public interface LiveMessages {
+        Collection<Long> existing(Collection<Long> emailIds);
+    }
+
+    static final int HEADER_LENGTH = 16;
+    private static final String SUFFIX = ".seg";
+    private static final String LOCK_FILE = "writer.lock";
+    private static final long COMPACTION_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int LIVE_QUERY_SIZE = 1000;
+    private static final int MAX_MISSING = 100_000;
+
+    private final Path directory;
+    private final MessageStore fallback;
+    private final boolean writable;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final LiveMessages liveMessages;
+    private final long intervalSeconds;
+    private final double garbageRatio;
+
+    private final ConcurrentMap<Long, Location> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Read-only store: ids not in the log at the last refresh
+    private final Set<Long> missing = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+
+    // Changed under writeLock
+    private volatile Segment active;
+
+    private ScheduledExecutorService scheduler;
+    private FileChannel lockChannel;
+
+    /** A read-only store over a writer's directory, looking for new and removed segments every refreshSeconds. */
+    public SegmentLogMessageStore(Path directory, MessageStore fallback, long refreshSeconds) {
+        this(directory, fallback, false, 0, false, null, refreshSeconds, 0);
+    }
+
+    /** The store that writes to the directory and compacts it every compactionSeconds. */
+    public SegmentLogMessageStore(Path directory, MessageStore fallback, long segmentBytes, boolean fsync,
+            LiveMessages liveMessages, long compactionSeconds, double garbageRatio) {
+        this(directory, fallback, true, segmentBytes, fsync, liveMessages, compactionSeconds, garbageRatio);
+    }
+
+    private SegmentLogMessageStore(Path directory, MessageStore fallback, boolean writable, long segmentBytes,
+            boolean fsync, LiveMessages liveMessages, long intervalSeconds, double garbageRatio) {
+        this.directory = directory;
+        this.fallback = fallback;
+        this.writable = writable;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.liveMessages = liveMessages;
+        this.intervalSeconds = intervalSeconds;
+        this.garbageRatio = garbageRatio;
+    }
+
+    @Override
+    public void start() {
+        try {
+            Files.createDirectories(directory);
+            if (writable) {
+                lock();
+            }
+            long started = System.nanoTime();
+            refresh();
+            if (writable) {
+                synchronized (writeLock) {
+                    Map.Entry<Long, Segment> last = segments.lastEntry();
+                    active = last != null && last.getValue().size < segmentBytes ? last.getValue()
+                            : openSegment(last != null ? last.getKey() + 1 : 1);
+                    active.sealedAt = 0;
+                }
+            }
+            log.info("Message store {}: {} messages in {} segments, indexed in {} ms", directory, index.size(),
+                    segments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open message store " + directory, e);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(writable ? this::compact : this::scheduledRefresh,
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+        if (lockChannel != null) {
+            try {
+                // Releases the lock
+                lockChannel.close();
+            } catch (IOException e) {
+                log.warn("Releasing message store {} failed: {}", directory, e.getMessage());
+            }
+            lockChannel = null;
+        }
+    }
+
+    /** Takes the writer's lock on the directory, failing if another writer holds it. */
+    private void lock() throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("Message store " + directory + " is already opened by another writer");
+        }
+        lockChannel = channel;
+    }
+
+    @Override
+    public void write(long emailId, byte[] message) {
+        if (!writable) {
+            throw new IllegalStateException("Message store " + directory + " is read-only here");
+        }
+        try {
+            synchronized (writeLock) {
+                append(emailId, message);
+                if (fsync) {
+                    active.channel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write message " + emailId, e);
+        }
+    }
+
+    @Override
+    public Long length(long emailId) {
+        Location location = locate(emailId);
+        if (location == null) {
+            return fallback != null ? fallback.length(emailId) : null;
+        }
+        return (long) location.length;
+    }
+
+    @Override
+    public byte[] read(long emailId, long offset, int length) {
+        Location location = locate(emailId);
+        if (location == null) {
+            return fallback != null ? fallback.read(emailId, offset, length) : null;
+        }
+        try {
+            return read(location, offset, length);
+        } catch (IOException e) {
+            // Compacted away since it was located: read the copy
+            Location moved = index.get(emailId);
+            if (moved == null || moved == location) {
+                throw new UncheckedIOException("Cannot read message " + emailId, e);
+            }
+            try {
+                return read(moved, offset, length);
+            } catch (IOException retry) {
+                throw new UncheckedIOException("Cannot read message " + emailId, retry);
+            }
+        }
+    }
+
+    private Location locate(long emailId) {
+        Location location = index.get(emailId);
+        if (location == null && !writable && !missing.contains(emailId)) {
+            // Possibly written by the writer since the last refresh
+            refreshQuietly();
+            location = index.get(emailId);
+            if (location == null && missing.size() < MAX_MISSING) {
+                missing.add(emailId);
+            }
+        }
+        return location;
+    }
+
+    private static byte[] read(Location location, long offset, int length) throws IOException {
+        if (offset >= location.length) {
+            return new byte[0];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, location.length - offset));
+        long position = location.offset + offset;
+        while (buffer.hasRemaining()) {
+            int read = location.segment.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Segment " + location.segment.id + " ends inside a message");
+            }
+        }
+        return buffer.array();
+    }
+
+    // Called with writeLock held
+    private void append(long emailId, byte[] message) throws IOException {
+        long recordLength = HEADER_LENGTH + (long) message.length;
+        if (active.size > 0 && active.size + recordLength > segmentBytes) {
+            active.channel.force(false);
+            active.sealedAt = System.currentTimeMillis();
+            active = openSegment(active.id + 1);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(message);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                .putInt(message.length).putLong(emailId).putInt((int) crc.getValue()).flip();
+        ByteBuffer data = ByteBuffer.wrap(message);
+        FileChannel channel = active.channel;
+        channel.position(active.size);
+        while (header.hasRemaining() || data.hasRemaining()) {
+            channel.write(new ByteBuffer[]{header, data});
+        }
+        index.put(emailId, new Location(active, active.size + HEADER_LENGTH, message.length));
+        active.size += recordLength;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path path = directory.resolve(String.format("%016d%s", id, SUFFIX));
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        Segment segment = new Segment(id, path, channel);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void scheduledRefresh() {
+        refreshQuietly();
+        missing.clear();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Refreshing message store {} failed: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes the records added to the segments since the last call, opening
+     * new segments and letting go of removed ones. On the writer this runs
+     * once, at startup.
+     */
+    private synchronized void refresh() throws IOException {
+        Set<Long> present = new HashSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    present.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                }
+            }
+        }
+        List<Long> ids = new ArrayList<>(present);
+        ids.sort(null);
+        Long newest = ids.isEmpty() ? null : ids.get(ids.size() - 1);
+        for (long id : ids) {
+            Segment segment = segments.get(id);
+            if (segment == null) {
+                segment = openSegment(id);
+                segment.sealedAt = Files.getLastModifiedTime(segment.path).toMillis();
+            }
+            scan(segment, id == newest);
+        }
+        // Removed by compaction after their live records were copied to a newer segment
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (!present.contains(segment.id)) {
+                index.values().removeIf(location -> location.segment == segment);
+                segments.remove(segment.id);
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Indexes the complete records after the segment's scanned size. Records
+     * of the newest segment are checked against their CRC, since a write may
+     * have been cut off there; the writer truncates such a tail.
+     */
+    private void scan(Segment segment, boolean newest) throws IOException {
+        FileChannel channel = segment.channel;
+        long end = channel.size();
+        long position = segment.size;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (position + HEADER_LENGTH <= end) {
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            long emailId = header.getLong(4);
+            if (length < 0 || position + HEADER_LENGTH + length > end) {
+                break;
+            }
+            if (newest) {
+                ByteBuffer data = ByteBuffer.allocate(length);
+                readFully(channel, data, position + HEADER_LENGTH);
+                CRC32 crc = new CRC32();
+                crc.update(data.array());
+                if ((int) crc.getValue() != header.getInt(12)) {
+                    break;
+                }
+            }
+            index.put(emailId, new Location(segment, position + HEADER_LENGTH, length));
+            position += HEADER_LENGTH + length;
+        }
+        segment.size = position;
+        if (position < end && writable) {
+            if (newest) {
+                log.warn("Truncating segment {} from {} to {} bytes after an incomplete write",
+                        segment.path, end, position);
+                channel.truncate(position);
+            } else {
+                log.warn("Segment {} is unreadable after byte {} of {}", segment.path, position, end);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    /** Rewrites the sealed segments in which deleted messages take up at least the garbage ratio. */
+    void compact() {
+        try {
+            long sealedBefore = System.currentTimeMillis() - COMPACTION_GRACE_MILLIS;
+            Map<Segment, List<Long>> idsBySegment = new HashMap<>();
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.sealedAt > 0 && segment.sealedAt < sealedBefore) {
+                    idsBySegment.put(segment, new ArrayList<>());
+                }
+            }
+            if (idsBySegment.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<Long, Location> entry : index.entrySet()) {
+                List<Long> ids = idsBySegment.get(entry.getValue().segment);
+                if (ids != null) {
+                    ids.add(entry.getKey());
+                }
+            }
+            for (Map.Entry<Segment, List<Long>> entry : idsBySegment.entrySet()) {
+                compact(entry.getKey(), entry.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Compacting message store {} failed: {}", directory, e.getMessage());
+        }
+    }
+
+    private void compact(Segment segment, List<Long> ids) throws IOException {
+        Set<Long> live = new HashSet<>();
+        for (int i = 0; i < ids.size(); i += LIVE_QUERY_SIZE) {
+            live.addAll(liveMessages.existing(ids.subList(i, Math.min(i + LIVE_QUERY_SIZE, ids.size()))));
+        }
+        long liveBytes = 0;
+        List<Long> kept = new ArrayList<>(live.size());
+        for (Long id : ids) {
+            Location location = index.get(id);
+            if (location == null || location.segment != segment) {
+                continue;
+            }
+            if (live.contains(id)) {
+                kept.add(id);
+                liveBytes += HEADER_LENGTH + location.length;
+            } else {
+                index.remove(id, location);
+            }
+        }
+        if (segment.size - liveBytes < garbageRatio * segment.size) {
+            return;
+        }
+        synchronized (writeLock) {
+            for (Long id : kept) {
+                Location location = index.get(id);
+                if (location != null && location.segment == segment) {
+                    append(id, read(location, 0, location.length));
+                }
+            }
+            // The copies must be durable before the originals go
+            active.channel.force(false);
+            segments.remove(segment.id);
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        }
+        log.info("Compacted segment {}: kept {} of {} messages, reclaimed {} bytes", segment.path, kept.size(),
+                ids.size(), segment.size - liveBytes);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        // Bytes of complete records; appended to under writeLock, scanned under the store's lock
+        private volatile long size;
+        // When the writer moved on to the next segment, 0 for the active one
+        private volatile long sealedAt;
+
+        private Segment(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Closing segment {} failed: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+
+        private Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.common.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentLogMessageStoreTest {
+
+    private static final int MESSAGE_LENGTH = 50;
+    // Two records of MESSAGE_LENGTH per segment
+    private static final long SEGMENT_BYTES = 150;
+
+    @TempDir
+    Path directory;
+
+    private final Set<Long> deleted = new HashSet<>();
+    private final List<SegmentLogMessageStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(SegmentLogMessageStore::stop);
+    }
+
+    @Test
+    void rebuildsIndexAfterRestart() {
+        SegmentLogMessageStore writer = writer();
+        for (long id = 1; id <= 5; id++) {
+            writer.write(id, message(id));
+        }
+        writer.write(3, message(33));
+        writer.stop();
+
+        SegmentLogMessageStore restarted = writer();
+        for (long id : new long[] { 1, 2, 4, 5 }) {
+            assertArrayEquals(message(id), read(restarted, id));
+        }
+        // The later record of an id wins
+        assertArrayEquals(message(33), read(restarted, 3));
+        assertArrayEquals("message 2".getBytes(StandardCharsets.UTF_8), restarted.read(2, 0, 9));
+        assertEquals(MESSAGE_LENGTH, restarted.length(4));
+        assertNull(restarted.length(6));
+    }
+
+    @Test
+    void truncatesPartialFinalRecord() throws IOException {
+        SegmentLogMessageStore writer = writer();
+        writer.write(1, message(1));
+        writer.stop();
+        Path segment = segments().get(0);
+        long complete = Files.size(segment);
+        // A crash in the middle of writing a record
+        ByteBuffer torn = ByteBuffer.allocate(SegmentLogMessageStore.HEADER_LENGTH + 10)
+                .putInt(MESSAGE_LENGTH).putLong(2).putInt(0).put(new byte[10]).flip();
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.APPEND)) {
+            channel.write(torn);
+        }
+
+        SegmentLogMessageStore restarted = writer();
+        assertEquals(complete, Files.size(segment));
+        assertArrayEquals(message(1), read(restarted, 1));
+        assertNull(restarted.length(2));
+
+        restarted.write(2, message(2));
+        restarted.stop();
+        assertArrayEquals(message(2), read(writer(), 2));
+    }
+
+    @Test
+    void compactionKeepsLiveMessagesAndDropsDeletedOnes() throws IOException {
+        SegmentLogMessageStore writer = sealedSegments();
+        List<Path> before = segments();
+        deleted.add(1L);
+
+        writer.compact();
+
+        List<Path> after = segments();
+        // Half of the first segment was deleted; the second is all live
+        assertFalse(after.contains(before.get(0)));
+        assertTrue(after.contains(before.get(1)));
+        assertNull(writer.length(1));
+        for (long id = 2; id <= 5; id++) {
+            assertArrayEquals(message(id), read(writer, id));
+        }
+
+        writer.stop();
+        SegmentLogMessageStore restarted = writer();
+        assertNull(restarted.length(1));
+        for (long id = 2; id <= 5; id++) {
+            assertArrayEquals(message(id), read(restarted, id));
+        }
+    }
+
+    @Test
+    void readerPicksUpNewAndRemovedSegments() throws IOException {
+        SegmentLogMessageStore writer = sealedSegments();
+        SegmentLogMessageStore reader = reader();
+        assertArrayEquals(message(1), read(reader, 1));
+
+        // Lands in a new segment the reader has not seen yet
+        writer.write(6, message(6));
+        writer.write(7, message(7));
+        assertArrayEquals(message(7), read(reader, 7));
+
+        deleted.add(1L);
+        writer.compact();
+        // Asking for an unknown id makes the reader look again
+        assertNull(reader.length(99));
+        assertNull(reader.length(1));
+        for (long id = 2; id <= 7; id++) {
+            assertArrayEquals(message(id), read(reader, id));
+        }
+        assertThrows(IllegalStateException.class, () -> reader.write(8, message(8)));
+    }
+
+    @Test
+    void secondWriterFailsToStart() {
+        SegmentLogMessageStore writer = writer();
+        assertThrows(IllegalStateException.class, this::writer);
+
+        // Readers do not take the lock
+        reader();
+        writer.stop();
+        writer().write(1, message(1));
+    }
+
+    /** Writes ids 1 to 5 and reopens the store with all but the newest segment sealed long ago. */
+    private SegmentLogMessageStore sealedSegments() throws IOException {
+        SegmentLogMessageStore writer = writer();
+        for (long id = 1; id <= 5; id++) {
+            writer.write(id, message(id));
+        }
+        writer.stop();
+        FileTime longAgo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        for (Path segment : segments()) {
+            Files.setLastModifiedTime(segment, longAgo);
+        }
+        return writer();
+    }
+
+    private SegmentLogMessageStore writer() {
+        return start(new SegmentLogMessageStore(directory, null, SEGMENT_BYTES, false,
+                ids -> ids.stream().filter(id -> !deleted.contains(id)).toList(), 3600, 0.5));
+    }
+
+    private SegmentLogMessageStore reader() {
+        return start(new SegmentLogMessageStore(directory, null, 3600));
+    }
+
+    private SegmentLogMessageStore start(SegmentLogMessageStore store) {
+        store.start();
+        stores.add(store);
+        return store;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    private static byte[] read(SegmentLogMessageStore store, long id) {
+        return store.read(id, 0, Integer.MAX_VALUE);
+    }
+
+    private static byte[] message(long id) {
+        byte[] message = new byte[MESSAGE_LENGTH];
+        byte[] text = ("message " + id).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(text, 0, message, 0, text.length);
+        return message;
+    }
+}
@@ -27,6 +27,14 @@ CREATE TABLE IF NOT EXISTS folders (
     UNIQUE(user_id, name, parent_id)
 );
 
+-- Per-folder message totals, maintained with every email change
+CREATE TABLE IF NOT EXISTS folder_counters (
+    folder_id INT PRIMARY KEY REFERENCES folders(id) ON DELETE CASCADE,
+    total_count BIGINT NOT NULL DEFAULT 0,
+    unread_count BIGINT NOT NULL DEFAULT 0,
+    size_bytes BIGINT NOT NULL DEFAULT 0
+);
+
 -- Emails
 CREATE TABLE IF NOT EXISTS emails (
     id SERIAL PRIMARY KEY,
@@ -37,11 +45,74 @@ CREATE TABLE IF NOT EXISTS emails (
     subject VARCHAR(998),
     body_text TEXT,
     body_html TEXT,
-    message_id VARCHAR(255),
+    snippet VARCHAR(160), -- Start of body_text shown in listings
+    message_id VARCHAR(255), -- Message-ID without angle brackets
+    thread_id INT, -- Id of the first email of the conversation, assigned at ingest
     is_read BOOLEAN DEFAULT FALSE,
     size_bytes BIGINT,
     received_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+-- When the email was last moved to another folder, for retention; null while in the folder it was delivered to
+ALTER TABLE emails ADD COLUMN IF NOT EXISTS folder_changed_at TIMESTAMP;
+
+-- Keyset pagination of a folder and of the whole mailbox, newest first
+CREATE INDEX IF NOT EXISTS idx_emails_user_folder_received ON emails (user_id, folder_id, received_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_emails_user_received ON emails (user_id, received_at DESC, id DESC);
+-- Admin statistics read the emails received recently across all users
+CREATE INDEX IF NOT EXISTS idx_emails_received ON emails (received_at);
+
+-- Threading: parent lookup by Message-ID at ingest, latest email and counts per conversation
+DROP INDEX IF EXISTS idx_emails_message_id;
+CREATE INDEX IF NOT EXISTS idx_emails_user_message_id ON emails (user_id, message_id);
+DROP INDEX IF EXISTS idx_emails_user_thread;
+CREATE INDEX IF NOT EXISTS idx_emails_user_thread_received ON emails (user_id, thread_id, received_at, id);
+
+-- Full-text search; maintained by PostgreSQL on every write. Adding the column to an existing table
+-- rewrites it, so do that in a maintenance window and build the index with CREATE INDEX CONCURRENTLY
+ALTER TABLE emails ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', coalesce(subject, '')), 'A') ||
+    setweight(to_tsvector('simple', coalesce(sender, '') || ' ' || coalesce(recipients, '')), 'B') ||
+    setweight(to_tsvector('simple', left(coalesce(body_text, ''), 262144)), 'D')) STORED;
+-- The owner is a key of the same GIN index (btree_gin, trusted since PostgreSQL 13), so a search reads
+-- only the posting lists of the user's own matches instead of every user's
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+DROP INDEX IF EXISTS idx_emails_search;
+CREATE INDEX IF NOT EXISTS idx_emails_user_search ON emails USING GIN (user_id, search_vector);
+-- Bodies stay plain text for search; large ones are compressed in TOAST, with lz4 (PostgreSQL 14+)
+-- as it decompresses several times faster than the default pglz
+ALTER TABLE emails ALTER COLUMN body_text SET COMPRESSION lz4;
+ALTER TABLE emails ALTER COLUMN body_html SET COMPRESSION lz4;
+
+-- Original RFC 822 message of each received email, read in chunks by downloads
+CREATE TABLE IF NOT EXISTS raw_messages (
+    email_id BIGINT PRIMARY KEY REFERENCES emails(id) ON DELETE CASCADE,
+    data BYTEA NOT NULL
+);
+-- Uncompressed out-of-line storage lets SUBSTRING fetch only the TOAST chunks it needs
+ALTER TABLE raw_messages ALTER COLUMN data SET STORAGE EXTERNAL;
+
+-- Mailbox changes pushed to connected clients; NOTIFY wakes the API nodes on commit
+CREATE TABLE IF NOT EXISTS mail_events (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    type VARCHAR(32) NOT NULL,
+    email_id BIGINT,
+    folder_id BIGINT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_mail_events_user ON mail_events (user_id, id);
+-- Cache invalidation polls read one or two types over the lookback
+CREATE INDEX IF NOT EXISTS idx_mail_events_type ON mail_events (type, id);
+
+CREATE OR REPLACE FUNCTION notify_mail_event() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('mail_events', NEW.user_id || ':' || NEW.id);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+DROP TRIGGER IF EXISTS mail_events_notify ON mail_events;
+CREATE TRIGGER mail_events_notify AFTER INSERT ON mail_events
+    FOR EACH ROW EXECUTE FUNCTION notify_mail_event();
 
 -- Attachments
 CREATE TABLE IF NOT EXISTS attachments (
@@ -53,15 +124,42 @@ CREATE TABLE IF NOT EXISTS attachments (
     size_bytes BIGINT
 );
 
+-- Listings check for attachments per email
+CREATE INDEX IF NOT EXISTS idx_attachments_email ON attachments(email_id);
+-- Downloads read attachments in chunks too, so they are stored like raw_messages.data
+ALTER TABLE attachments ALTER COLUMN data SET STORAGE EXTERNAL;
+
 -- Outbound Queue
 CREATE TABLE IF NOT EXISTS outbound_queue (
     id SERIAL PRIMARY KEY,
     sender VARCHAR(255) NOT NULL,
     recipient VARCHAR(255) NOT NULL,
-    email_data BYTEA NOT NULL, -- Raw EML content
+    email_data BYTEA NOT NULL, -- Raw EML content, zstd-compressed by the application (see PayloadCodec)
     status VARCHAR(20) DEFAULT 'PENDING', -- PENDING, RETRY, FAILED, SENT
     retry_count INT DEFAULT 0,
     next_retry_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     error_message TEXT,
+    correlation_id VARCHAR(64), -- SMTP session/message id, carried into delivery logs
+    idempotency_key VARCHAR(200) UNIQUE, -- <sender>:<client key> for batch submissions
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+
+-- Queue worker polling, the admin statistics (sent rows carry their delivery time in next_retry_at)
+-- and queue retention
+CREATE INDEX IF NOT EXISTS idx_outbound_queue_status ON outbound_queue (status, next_retry_at);
+-- Already compressed; TOAST compression would only cost CPU
+ALTER TABLE outbound_queue ALTER COLUMN email_data SET STORAGE EXTERNAL;
+
+-- zstd dictionaries for the compressed payloads; rows are referenced by id from stored values
+CREATE TABLE IF NOT EXISTS compression_dictionaries (
+    id SERIAL PRIMARY KEY,
+    data BYTEA NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+-- Ids of the tables written in bulk are handed out by the application in blocks of 50
+-- (pooled sequences, so inserts can be batched); the increment must match the entities
+ALTER SEQUENCE folders_id_seq INCREMENT BY 50;
+ALTER SEQUENCE emails_id_seq INCREMENT BY 50;
+ALTER SEQUENCE attachments_id_seq INCREMENT BY 50;
+ALTER SEQUENCE outbound_queue_id_seq INCREMENT BY 50;
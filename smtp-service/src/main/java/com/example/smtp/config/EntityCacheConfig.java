@@ -0,0 +1,38 @@
+package com.example.smtp.config;
+
+import com.example.common.cache.ReferenceDataCache;
+import com.example.common.repository.MailEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.support.TransactionOperations;
+
+import javax.cache.CacheManager;
+
+@Configuration
+public class EntityCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(Environment environment) {
+        return ReferenceDataCache.createCacheManager(environment);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheSettings(CacheManager entityCacheManager) {
+        return properties -> ReferenceDataCache.configure(properties, entityCacheManager);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReferenceDataCache referenceDataCache(EntityManagerFactory entityManagerFactory,
+            MailEventRepository mailEventRepository,
+            MeterRegistry meterRegistry,
+            @Value("${entity.cache.poll.ms:1000}") long pollIntervalMs,
+            @Value("${events.lookback.ms:60000}") long lookbackMs) {
+        return new ReferenceDataCache(entityManagerFactory, mailEventRepository,
+                TransactionOperations.withoutTransaction(), pollIntervalMs, 0, lookbackMs, meterRegistry);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.smtp.config;
+
+import com.example.common.codec.CompressionDictionaries;
+import com.example.common.codec.PayloadCodec;
+import com.example.common.persistence.BatchPersister;
+import com.example.common.repository.CompressionDictionaryRepository;
+import com.example.common.repository.EmailRepository;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.repository.RawMessageRepository;
+import com.example.common.retention.MailboxPurger;
+import com.example.common.store.DatabaseMessageStore;
+import com.example.common.store.MessageStore;
+import com.example.common.store.SegmentLogMessageStore;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+
+@Configuration
+public class PersistenceConfig {
+
+    @Bean
+    public BatchPersister batchPersister(EntityManager entityManager,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        return new BatchPersister(entityManager, batchSize);
+    }
+
+    @Bean
+    public PayloadCodec payloadCodec(@Value("${codec.zstd.level:3}") int level) {
+        return new PayloadCodec(level);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public CompressionDictionaries compressionDictionaries(PayloadCodec payloadCodec,
+            CompressionDictionaryRepository repository,
+            @Value("${codec.dictionary.refresh.seconds:60}") long refreshSeconds) {
+        return new CompressionDictionaries(payloadCodec, repository, refreshSeconds);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public MessageStore messageStore(BatchPersister batchPersister, RawMessageRepository rawMessageRepository,
+            EmailRepository emailRepository,
+            @Value("${message.store:database}") String type,
+            @Value("${message.store.directory:data/messages}") String directory,
+            @Value("${message.store.segment.bytes:268435456}") long segmentBytes,
+            @Value("${message.store.fsync:true}") boolean fsync,
+            @Value("${message.store.compaction.seconds:3600}") long compactionSeconds,
+            @Value("${message.store.compaction.garbage.ratio:0.5}") double garbageRatio) {
+        MessageStore database = new DatabaseMessageStore(batchPersister, rawMessageRepository);
+        switch (type) {
+            case "database":
+                return database;
+            case "segment":
+                return new SegmentLogMessageStore(Path.of(directory), database, segmentBytes, fsync,
+                        emailRepository::findExistingIds, compactionSeconds, garbageRatio);
+            default:
+                throw new IllegalArgumentException("Unknown message.store: " + type);
+        }
+    }
+
+    @Bean
+    public MailboxPurger mailboxPurger(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            TransactionTemplate transactionTemplate, FolderCounterRepository folderCounterRepository,
+            MailEventRepository mailEventRepository,
+            @Value("${retention.chunk.size:1000}") int chunkSize,
+            @Value("${retention.chunk.pause.ms:200}") long pauseMs) {
+        return new MailboxPurger(namedParameterJdbcTemplate, transactionTemplate, folderCounterRepository,
+                mailEventRepository, chunkSize, pauseMs);
+    }
+}
@@ -3,6 +3,8 @@ package com.example.smtp.config;
 import com.example.common.entity.User;
 import com.example.common.repository.UserRepository;
 import com.example.smtp.handler.MailHandlerFactory;
+import com.example.smtp.metrics.MetricsSessionHandler;
+import com.example.smtp.metrics.SmtpMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,39 +16,60 @@ import org.subethamail.smtp.auth.EasyAuthenticationHandlerFactory;
 import org.subethamail.smtp.auth.LoginFailedException;
 import org.subethamail.smtp.auth.UsernamePasswordValidator;
 import org.subethamail.smtp.server.SMTPServer;
+import org.subethamail.smtp.server.SessionHandler;
+
+import java.util.UUID;
 
 @Configuration
 public class SmtpServerConfig {
 
+    public static final String INBOUND = "inbound";
+    public static final String SUBMISSION = "submission";
+
     @Value("${smtp.port:25000}")
     private int port;
 
     @Value("${smtp.submission.port:58700}")
     private int submissionPort;
 
+    @Value("${smtp.max.message.size:0}")
+    private int maxMessageSize;
+
     @Bean
-    public AuthenticationHandlerFactory authenticationHandlerFactory(UserRepository userRepository) {
+    public AuthenticationHandlerFactory authenticationHandlerFactory(UserRepository userRepository,
+            SmtpMetrics metrics) {
         PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
         return new EasyAuthenticationHandlerFactory(new UsernamePasswordValidator() {
             @Override
             public void login(String username, String password, MessageContext context) throws LoginFailedException {
-                if (username == null || password == null) {
-                    throw new LoginFailedException("Username or password cannot be null");
-                }
-                User user = userRepository.findByUsername(username)
-                        .orElseThrow(() -> new LoginFailedException("User not found"));
+                long start = System.nanoTime();
+                try {
+                    if (username == null || password == null) {
+                        throw new LoginFailedException("Username or password cannot be null");
+                    }
+                    User user = userRepository.findByUsername(username)
+                            .orElseThrow(() -> new LoginFailedException("User not found"));
 
-                if (!passwordEncoder.matches(password, user.getPassword())) {
-                    throw new LoginFailedException("Invalid password");
+                    if (!passwordEncoder.matches(password, user.getPassword())) {
+                        throw new LoginFailedException("Invalid password");
+                    }
+                } catch (LoginFailedException e) {
+                    metrics.recordRejection(SUBMISSION, SmtpMetrics.REJECT_AUTH);
+                    throw e;
+                } finally {
+                    metrics.recordCommand(SUBMISSION, "AUTH", start);
                 }
             }
         });
     }
 
     @Bean(initMethod = "start", destroyMethod = "stop")
-    public SMTPServer smtpServerInbound(MailHandlerFactory mailHandlerFactory) {
+    public SMTPServer smtpServerInbound(MailHandlerFactory mailHandlerFactory, SmtpMetrics metrics) {
         return SMTPServer.port(port)
                 .messageHandlerFactory(mailHandlerFactory)
+                .sessionIdFactory(() -> UUID.randomUUID().toString())
+                .sessionHandler(new MetricsSessionHandler(INBOUND, metrics, SessionHandler.acceptAll()))
+                .maxMessageSize(maxMessageSize)
                 .enableTLS(true)
                 .requireTLS(false) // Opportunistic TLS
                 .build();
@@ -54,10 +77,13 @@ public class SmtpServerConfig {
 
     @Bean(initMethod = "start", destroyMethod = "stop")
     public SMTPServer smtpServerSubmission(MailHandlerFactory mailHandlerFactory,
-            AuthenticationHandlerFactory authHandlerFactory) {
+            AuthenticationHandlerFactory authHandlerFactory, SmtpMetrics metrics) {
         return SMTPServer.port(submissionPort)
                 .messageHandlerFactory(mailHandlerFactory)
                 .authenticationHandlerFactory(authHandlerFactory)
+                .sessionIdFactory(() -> UUID.randomUUID().toString())
+                .sessionHandler(new MetricsSessionHandler(SUBMISSION, metrics, SessionHandler.acceptAll()))
+                .maxMessageSize(maxMessageSize)
                 .enableTLS(true)
                 .requireTLS(false) // Clients can choose
                 .requireAuth(true)
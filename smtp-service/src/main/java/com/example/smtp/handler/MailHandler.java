@@ -1,78 +1,77 @@
 package com.example.smtp.handler;
 
 import com.example.common.entity.OutboundQueue;
-import com.example.common.repository.EmailRepository;
-import com.example.common.repository.MailQueueRepository;
+import com.example.smtp.metrics.SmtpMetrics;
+import com.example.smtp.service.IngestService;
+import com.example.smtp.service.ThreadingService;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.subethamail.smtp.MessageContext;
 import org.subethamail.smtp.MessageHandler;
 import org.subethamail.smtp.RejectException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.List;
 
 @Slf4j
 public class MailHandler implements MessageHandler {
 
     private final MessageContext context;
-    private final EmailRepository emailRepository;
-    private final MailQueueRepository mailQueueRepository;
-
-    public MailHandler(MessageContext context, EmailRepository emailRepository,
-            MailQueueRepository mailQueueRepository) {
+    private final IngestService ingestService;
+    private final SmtpMetrics metrics;
+    private final String server;
+    private final String correlationId;
+    private final int maxMessageSize;
+    private final long transactionStart;
+
+    public MailHandler(MessageContext context, IngestService ingestService, SmtpMetrics metrics, String server,
+            String correlationId, int maxMessageSize, long transactionStart) {
         this.context = context;
-        this.emailRepository = emailRepository;
-        this.mailQueueRepository = mailQueueRepository;
+        this.ingestService = ingestService;
+        this.metrics = metrics;
+        this.server = server;
+        this.correlationId = correlationId;
+        this.maxMessageSize = maxMessageSize;
+        this.transactionStart = transactionStart;
     }
 
     @Override
     public void from(String from) throws RejectException {
+        // The handler is created by MAIL FROM, so the command latency spans creation and this callback
+        metrics.recordCommand(server, "MAIL", transactionStart);
     }
 
     @Override
     public void recipient(String recipient) throws RejectException {
+        // Accepts every recipient without work of its own, so there is no RCPT latency to time
     }
 
     @Override
     public String data(InputStream data) throws RejectException, IOException {
+        long start = System.nanoTime();
+        MDC.put("correlationId", correlationId);
+        try {
+            String result = receive(data, start);
+            metrics.recordTimeTo250(server, transactionStart);
+            return result;
+        } finally {
+            metrics.recordCommand(server, "DATA", start);
+            MDC.remove("correlationId");
+        }
+    }
+
+    private String receive(InputStream data, long start) throws RejectException, IOException {
         log.info("DATA received, parsing message manually...");
 
-        byte[] rawData = data.readAllBytes();
-        java.io.ByteArrayInputStream inputStream = new java.io.ByteArrayInputStream(rawData);
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-        Map<String, String> headers = new HashMap<>();
-        StringBuilder bodyBuilder = new StringBuilder();
-        boolean inBody = false;
-        String line;
-
-        while ((line = reader.readLine()) != null) {
-            if (!inBody) {
-                if (line.isEmpty()) {
-                    inBody = true;
-                } else {
-                    int colonIndex = line.indexOf(':');
-                    if (colonIndex > 0) {
-                        String key = line.substring(0, colonIndex).trim().toLowerCase();
-                        String value = line.substring(colonIndex + 1).trim();
-                        headers.put(key, value);
-                    }
-                }
-            } else {
-                bodyBuilder.append(line).append("\n");
-            }
-        }
+        byte[] rawData = readMessage(data);
+        metrics.recordIngest(server, rawData.length, start);
+        MessageParser.ParsedMessage parsed = MessageParser.parse(rawData);
 
-        String subject = headers.getOrDefault("subject", "No Subject");
-        String from = headers.getOrDefault("from", "Unknown");
-        String to = headers.getOrDefault("to", "Unknown");
-        String body = bodyBuilder.toString().trim();
+        String subject = parsed.header("subject", "No Subject");
+        String from = parsed.header("from", "Unknown");
+        String to = parsed.header("to", "Unknown");
+        String body = parsed.getBody();
 
         log.info("Parsed Email (Manual) - Subject: {}, From: {}, To: {}", subject, from, to);
 
@@ -81,12 +80,11 @@ public class MailHandler implements MessageHandler {
                 .recipient(to)
                 .subject(subject)
                 .body(body)
+                .sizeBytes((long) rawData.length)
+                .messageId(ThreadingService.messageId(parsed.header("message-id", null)))
                 .build();
 
-        emailRepository.save(email);
-        log.info("Email saved to database.");
-
-        // Save to Outbound Queue
+        // Queued for delivery in the same transaction as the email
         OutboundQueue queueItem = new OutboundQueue();
         queueItem.setSender(from);
         queueItem.setRecipient(to);
@@ -95,13 +93,27 @@ public class MailHandler implements MessageHandler {
         queueItem.setRetryCount(0);
         queueItem.setNextRetryAt(java.time.LocalDateTime.now());
         queueItem.setCreatedAt(java.time.LocalDateTime.now());
+        queueItem.setCorrelationId(correlationId);
 
-        mailQueueRepository.save(queueItem);
-        log.info("Email added to Outbound Queue for delivery.");
+        ingestService.store(email, rawData, ThreadingService.parents(parsed.header("in-reply-to", null),
+                parsed.header("references", null)), List.of(queueItem));
+        log.info("Email saved to database and added to Outbound Queue for delivery.");
 
         return null;
     }
 
+    private byte[] readMessage(InputStream data) throws RejectException, IOException {
+        if (maxMessageSize <= 0) {
+            return data.readAllBytes();
+        }
+        byte[] rawData = data.readNBytes(maxMessageSize + 1);
+        if (rawData.length > maxMessageSize) {
+            metrics.recordRejection(server, SmtpMetrics.REJECT_SIZE);
+            throw new RejectException(552, "Message size exceeds fixed maximum message size");
+        }
+        return rawData;
+    }
+
     @Override
     public void done() {
     }
@@ -1,8 +1,10 @@
 package com.example.smtp.handler;
 
-import com.example.common.repository.EmailRepository;
+import com.example.smtp.metrics.SmtpMetrics;
+import com.example.smtp.service.IngestService;
 import com.example.smtp.util.RateLimiter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.subethamail.smtp.MessageContext;
 import org.subethamail.smtp.MessageHandler;
@@ -18,14 +20,21 @@ import java.net.InetSocketAddress;
 @lombok.extern.slf4j.Slf4j
 public class MailHandlerFactory implements MessageHandlerFactory {
 
-    private final EmailRepository emailRepository;
-    private final com.example.common.repository.MailQueueRepository mailQueueRepository;
+    private final IngestService ingestService;
     private final RateLimiter rateLimiter;
+    private final SmtpMetrics metrics;
+
+    @Value("${smtp.max.message.size:0}")
+    private int maxMessageSize;
 
     @Override
     public MessageHandler create(MessageContext context) {
-        log.info("create called. RemoteAddress: {}, Type: {}", context.getRemoteAddress(),
-                context.getRemoteAddress() != null ? context.getRemoteAddress().getClass().getName() : "null");
+        long start = System.nanoTime();
+        String server = metrics.serverOf(context.getSessionId());
+        String correlationId = metrics.nextCorrelationId(context.getSessionId());
+        log.info("create called. RemoteAddress: {}, Type: {}, CorrelationId: {}", context.getRemoteAddress(),
+                context.getRemoteAddress() != null ? context.getRemoteAddress().getClass().getName() : "null",
+                correlationId);
         if (context.getRemoteAddress() instanceof InetSocketAddress) {
             try {
                 String ip = ((InetSocketAddress) context.getRemoteAddress()).getAddress().getHostAddress();
@@ -33,10 +42,12 @@ public class MailHandlerFactory implements MessageHandlerFactory {
                 rateLimiter.onConnect(((InetSocketAddress) context.getRemoteAddress()).getAddress());
             } catch (RejectException e) {
                 log.warn("Connection rejected: {}", e.getMessage());
+                metrics.recordRejection(server, SmtpMetrics.REJECT_RATE_LIMIT);
                 return new RejectingMessageHandler(e.getMessage());
             }
         }
-        return new MailHandler(context, emailRepository, mailQueueRepository);
+        return new MailHandler(context, ingestService, metrics, server, correlationId,
+                maxMessageSize, start);
     }
 
     private static class RejectingMessageHandler implements MessageHandler {
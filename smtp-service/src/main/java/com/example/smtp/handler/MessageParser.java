@@ -0,0 +1,69 @@
+package com.example.smtp.handler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal RFC 822 parser used on the receive path: header lines are split at
+ * the first colon and collected by lower-cased name (last occurrence wins),
+ * folded continuation lines are joined to their header with a space, and the
+ * lines after the first blank line form the body.
+ */
+public final class MessageParser {
+
+    private MessageParser() {
+    }
+
+    public static ParsedMessage parse(byte[] rawData) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(rawData), StandardCharsets.UTF_8));
+        Map<String, String> headers = new HashMap<>();
+        StringBuilder bodyBuilder = new StringBuilder();
+        boolean inBody = false;
+        String line;
+        String lastKey = null;
+
+        while ((line = reader.readLine()) != null) {
+            if (!inBody) {
+                if (line.isEmpty()) {
+                    inBody = true;
+                } else if (lastKey != null && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                    headers.merge(lastKey, line.trim(), (value, more) -> value + " " + more);
+                } else {
+                    int colonIndex = line.indexOf(':');
+                    if (colonIndex > 0) {
+                        String key = line.substring(0, colonIndex).trim().toLowerCase();
+                        String value = line.substring(colonIndex + 1).trim();
+                        headers.put(key, value);
+                        lastKey = key;
+                    } else {
+                        lastKey = null;
+                    }
+                }
+            } else {
+                bodyBuilder.append(line).append("\n");
+            }
+        }
+
+        return new ParsedMessage(headers, bodyBuilder.toString().trim());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ParsedMessage {
+        private final Map<String, String> headers;
+        private final String body;
+
+        public String header(String name, String defaultValue) {
+            return headers.getOrDefault(name, defaultValue);
+        }
+    }
+}
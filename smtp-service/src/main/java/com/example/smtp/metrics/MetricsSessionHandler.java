@@ -0,0 +1,38 @@
+package com.example.smtp.metrics;
+
+import org.subethamail.smtp.server.Session;
+import org.subethamail.smtp.server.SessionHandler;
+
+/**
+ * Tracks session lifecycle for one SMTP server and delegates the accept
+ * decision to the wrapped handler.
+ */
+public class MetricsSessionHandler implements SessionHandler {
+
+    private final String server;
+    private final SmtpMetrics metrics;
+    private final SessionHandler delegate;
+
+    public MetricsSessionHandler(String server, SmtpMetrics metrics, SessionHandler delegate) {
+        this.server = server;
+        this.metrics = metrics;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public SessionAcceptance accept(Session session) {
+        SessionAcceptance acceptance = delegate.accept(session);
+        if (acceptance.accepted()) {
+            metrics.sessionStarted(server, session.getSessionId());
+        } else {
+            metrics.recordRejection(server, SmtpMetrics.REJECT_RATE_LIMIT);
+        }
+        return acceptance;
+    }
+
+    @Override
+    public void onSessionEnd(Session session) {
+        delegate.onSessionEnd(session);
+        metrics.sessionEnded(server, session.getSessionId());
+    }
+}
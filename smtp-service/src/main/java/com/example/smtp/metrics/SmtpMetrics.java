@@ -0,0 +1,141 @@
+package com.example.smtp.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session-level metrics for the inbound SMTP servers.
+ *
+ * Sessions are tracked by their SubEthaSMTP session id so that the message
+ * handlers (created per mail transaction) can attribute timings to the
+ * session they belong to and derive per-message correlation ids.
+ */
+@Component
+public class SmtpMetrics {
+
+    public static final String REJECT_RATE_LIMIT = "rate_limit";
+    public static final String REJECT_AUTH = "auth";
+    public static final String REJECT_SIZE = "size";
+
+    private final MeterRegistry registry;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeSessions = new ConcurrentHashMap<>();
+
+    public SmtpMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void sessionStarted(String server, String sessionId) {
+        activeSessions(server).incrementAndGet();
+        sessions.put(sessionId, new SessionState(server, System.nanoTime()));
+    }
+
+    public void sessionEnded(String server, String sessionId) {
+        activeSessions(server).decrementAndGet();
+        SessionState state = sessions.remove(sessionId);
+        if (state != null) {
+            Timer.builder("smtp.session.duration")
+                    .tag("server", server)
+                    .register(registry)
+                    .record(System.nanoTime() - state.startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the correlation id for the next message of the session and, for
+     * the first message, records the time spent before MAIL FROM (greeting,
+     * EHLO, STARTTLS and AUTH).
+     */
+    public String nextCorrelationId(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null) {
+            return sessionId;
+        }
+        int sequence = state.messages.incrementAndGet();
+        if (sequence == 1) {
+            Timer.builder("smtp.session.setup")
+                    .description("Time from connect to the first MAIL FROM")
+                    .tag("server", state.server)
+                    .register(registry)
+                    .record(System.nanoTime() - state.startNanos, TimeUnit.NANOSECONDS);
+        }
+        return sessionId + "." + sequence;
+    }
+
+    public String serverOf(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null ? state.server : "unknown";
+    }
+
+    public void recordCommand(String server, String command, long startNanos) {
+        Timer.builder("smtp.command.latency")
+                .tag("server", server)
+                .tag("command", command)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordIngest(String server, long bytes, long startNanos) {
+        long elapsed = Math.max(System.nanoTime() - startNanos, 1);
+        Counter.builder("smtp.ingest.bytes")
+                .baseUnit("bytes")
+                .tag("server", server)
+                .register(registry)
+                .increment(bytes);
+        DistributionSummary.builder("smtp.ingest.throughput")
+                .baseUnit("bytes/s")
+                .tag("server", server)
+                .register(registry)
+                .record(bytes * 1_000_000_000d / elapsed);
+    }
+
+    public void recordTimeTo250(String server, long startNanos) {
+        Timer.builder("smtp.data.time.to.250")
+                .description("Time from MAIL FROM until the message is accepted")
+                .tag("server", server)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejection(String server, String reason) {
+        Counter.builder("smtp.rejections")
+                .tag("server", server)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    private AtomicInteger activeSessions(String server) {
+        return activeSessions.computeIfAbsent(server, s -> {
+            AtomicInteger value = new AtomicInteger();
+            Gauge.builder("smtp.sessions.active", value, AtomicInteger::get)
+                    .tag("server", s)
+                    .register(registry);
+            return value;
+        });
+    }
+
+    private static final class SessionState {
+        private final String server;
+        private final long startNanos;
+        private final AtomicInteger messages = new AtomicInteger();
+
+        private SessionState(String server, long startNanos) {
+            this.server = server;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -24,6 +24,9 @@ public class DeliveryService {
     private final MxLookupService mxLookupService;
     private final DkimSigningService dkimSigningService;
 
+    @Value("${dkim.enabled:true}")
+    private boolean dkimEnabled;
+
     @Value("${relay.host:}")
     private String relayHost;
 
@@ -53,16 +56,20 @@ public class DeliveryService {
 
     public void processItem(OutboundQueue item) {
         try {
-            log.info("Processing outbound item ID: {}", item.getId());
+            log.info("Processing outbound item ID: {} (correlation {})", item.getId(), item.getCorrelationId());
 
             // 1. Sign with DKIM (and parse)
-            MimeMessage message;
-            try {
-                message = dkimSigningService.signMessage(item.getEmailData());
-            } catch (Exception e) {
-                log.error("Failed to sign message with DKIM, sending unsigned", e);
-                // Fallback to unsigned if signing fails? Or fail?
-                // Let's fallback for now but log error
+            MimeMessage message = null;
+            if (dkimEnabled) {
+                try {
+                    message = dkimSigningService.signMessage(item.getEmailData());
+                } catch (Exception e) {
+                    // Fallback to unsigned if signing fails? Or fail?
+                    // Let's fallback for now but log error
+                    log.error("Failed to sign message with DKIM, sending unsigned", e);
+                }
+            }
+            if (message == null) {
                 Session session = Session.getInstance(new Properties());
                 message = new MimeMessage(session, new java.io.ByteArrayInputStream(item.getEmailData()));
             }
@@ -109,8 +116,10 @@ public class DeliveryService {
             // 4. Update Status
             item.setStatus("SENT");
             item.setErrorMessage(null);
+            // No retry is due any more; the time of the delivery is what statistics and retention go by
+            item.setNextRetryAt(LocalDateTime.now());
             mailQueueRepository.save(item);
-            log.info("Email sent successfully. Item ID: {}", item.getId());
+            log.info("Email sent successfully. Item ID: {}, correlation: {}", item.getId(), item.getCorrelationId());
 
         } catch (Exception e) {
             log.error("Failed to send email. Item ID: {}", item.getId(), e);
@@ -123,6 +132,7 @@ public class DeliveryService {
         item.setErrorMessage(errorMessage);
         if (item.getRetryCount() >= maxRetries) {
             item.setStatus("FAILED");
+            item.setNextRetryAt(LocalDateTime.now());
         } else {
             item.setStatus("RETRY");
             // Exponential backoff: backoffFactor^retryCount * 1 minute
@@ -6,7 +6,6 @@ import org.simplejavamail.api.email.Email;
 import org.simplejavamail.api.mailer.Mailer;
 import org.simplejavamail.api.mailer.config.TransportStrategy;
 import org.simplejavamail.converter.EmailConverter;
-import org.simplejavamail.email.EmailBuilder;
 import org.simplejavamail.mailer.MailerBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
@@ -31,15 +30,12 @@ public class DkimSigningService {
 
     public MimeMessage signMessage(byte[] emailData) {
         try {
-            // Convert byte array to Email object
-            Email email = EmailConverter
-                    .mimeMessageToEmail(new MimeMessage(null, new java.io.ByteArrayInputStream(emailData)));
-
-            // Build a new Email with DKIM signing
             File privateKeyFile = new File(privateKeyPath);
             byte[] privateKeyBytes = Files.readAllBytes(privateKeyFile.toPath());
 
-            Email signedEmail = EmailBuilder.copying(email)
+            // Parse straight into a builder; EmailBuilder.copying() needs the S/MIME module
+            Email signedEmail = EmailConverter
+                    .mimeMessageToEmailBuilder(new MimeMessage(null, new java.io.ByteArrayInputStream(emailData)))
                     .signWithDomainKey(privateKeyBytes, signingDomain, selector, null)
                     .buildEmail();
 
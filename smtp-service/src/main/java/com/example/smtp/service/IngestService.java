@@ -0,0 +1,78 @@
+package com.example.smtp.service;
+
+import com.example.common.entity.Email;
+import com.example.common.entity.MailEvent;
+import com.example.common.entity.OutboundQueue;
+import com.example.common.persistence.BatchPersister;
+import com.example.common.repository.FolderCounterRepository;
+import com.example.common.repository.MailEventRepository;
+import com.example.common.store.MessageStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Stores received emails. The email, its outbound queue rows, its folder's
+ * counters and the events announcing it to the owner's clients are written
+ * in one transaction, the inserts as JDBC batches; the raw message goes to
+ * the {@link MessageStore}, which joins that transaction when it is the
+ * database. The
+ * email is assigned to a conversation first; once the transaction commits,
+ * the threading lookup learns its Message-ID.
+ */
+@Service
+@RequiredArgsConstructor
+public class IngestService {
+
+    private final BatchPersister batchPersister;
+    private final FolderCounterRepository folderCounterRepository;
+    private final MailEventRepository mailEventRepository;
+    private final MessageStore messageStore;
+    private final ThreadingService threadingService;
+
+    public Email store(Email email, byte[] rawData) {
+        return store(email, rawData, List.of(), List.of());
+    }
+
+    /**
+     * @param parents    message ids the email replies to, nearest first; see
+     *                   {@link ThreadingService#parents(String, String)}
+     * @param deliveries outbound queue rows to add with the email
+     */
+    @Transactional
+    public Email store(Email email, byte[] rawData, List<String> parents, List<OutboundQueue> deliveries) {
+        threadingService.assign(email, parents);
+        // Persisting draws the id from the sequence; nothing is inserted until the flush
+        batchPersister.persistAll(List.of(email));
+        Email saved = email;
+        if (saved.getThreadId() == null) {
+            // Starts a conversation
+            saved.setThreadId(saved.getId());
+        }
+        messageStore.write(saved.getId(), rawData);
+        batchPersister.persistAll(deliveries);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    threadingService.remember(saved, parents);
+                }
+            });
+        } else {
+            threadingService.remember(saved, parents);
+        }
+        folderCounterRepository.added(saved);
+        if (saved.getUser() != null) {
+            Long folderId = saved.getFolder() != null ? saved.getFolder().getId() : null;
+            mailEventRepository.record(saved.getUser().getId(), MailEvent.NEW_MESSAGE, saved.getId(), folderId);
+            if (folderId != null) {
+                mailEventRepository.record(saved.getUser().getId(), MailEvent.FOLDER_COUNTERS, null, folderId);
+            }
+        }
+        return saved;
+    }
+}
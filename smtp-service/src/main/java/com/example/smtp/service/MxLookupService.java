@@ -18,31 +18,38 @@ public class MxLookupService {
     public List<String> getMxRecords(String domain) {
         try {
             Record[] records = new Lookup(domain, Type.MX).run();
-            if (records == null || records.length == 0) {
-                return Collections.emptyList();
-            }
+            return sortedHosts(records);
+        } catch (TextParseException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Extracts the MX targets from a DNS answer, ordered by preference and
+     * without the trailing root dot.
+     */
+    public List<String> sortedHosts(Record[] records) {
+        if (records == null || records.length == 0) {
+            return Collections.emptyList();
+        }
 
-            List<MXRecord> mxRecords = new ArrayList<>();
-            for (Record record : records) {
-                if (record instanceof MXRecord) {
-                    mxRecords.add((MXRecord) record);
-                }
+        List<MXRecord> mxRecords = new ArrayList<>();
+        for (Record record : records) {
+            if (record instanceof MXRecord) {
+                mxRecords.add((MXRecord) record);
             }
+        }
 
-            mxRecords.sort(Comparator.comparingInt(MXRecord::getPriority));
+        mxRecords.sort(Comparator.comparingInt(MXRecord::getPriority));
 
-            List<String> sortedHosts = new ArrayList<>();
-            for (MXRecord mxRecord : mxRecords) {
-                String target = mxRecord.getTarget().toString();
-                if (target.endsWith(".")) {
-                    target = target.substring(0, target.length() - 1);
-                }
-                sortedHosts.add(target);
+        List<String> sortedHosts = new ArrayList<>();
+        for (MXRecord mxRecord : mxRecords) {
+            String target = mxRecord.getTarget().toString();
+            if (target.endsWith(".")) {
+                target = target.substring(0, target.length() - 1);
             }
-            return sortedHosts;
-
-        } catch (TextParseException e) {
-            return Collections.emptyList();
+            sortedHosts.add(target);
         }
+        return sortedHosts;
     }
 }
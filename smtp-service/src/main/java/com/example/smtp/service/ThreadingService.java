@@ -0,0 +1,180 @@
+package com.example.smtp.service;
+
+import com.example.common.entity.Email;
+import com.example.common.repository.EmailRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Assigns received emails to conversations, following JWZ threading.
+ *
+ * An email joins the thread of the nearest known message it replies to,
+ * taken from In-Reply-To and then References from the end. Failing that, it
+ * joins the thread of an earlier email that referenced its own Message-ID,
+ * which handles a reply delivered before its parent. If none of those are
+ * known, a reply (a subject with a {@code Re:}-style prefix) joins a recent
+ * thread with the same normalized subject in the same mailbox. Otherwise it
+ * starts a thread, whose id is the email's own id.
+ *
+ * Threading never crosses mailboxes: Message-IDs and subjects are only
+ * matched against the same user's emails (or, for emails without an owner,
+ * the same recipient's), so one mailbox's ids never leak into another's
+ * threads. Recent Message-IDs, including referenced ones not stored here, are
+ * kept in memory per mailbox; misses fall back to one query on the
+ * {@code (user_id, message_id)} index.
+ */
+@Service
+public class ThreadingService {
+
+    private static final Pattern MESSAGE_ID = Pattern.compile("<([^<>\\s]+)>");
+    private static final Pattern REPLY_PREFIX = Pattern.compile(
+            "^(\\s*((re|fwd?|aw|wg|sv|vs|antw)(\\[\\d+])?\\s*:|\\[[^\\]]*]))+\\s*", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_REFERENCES = 20;
+
+    private final EmailRepository emailRepository;
+    private final Cache<String, Long> threadsByMessageId;
+    private final Cache<String, Long> threadsBySubject;
+
+    public ThreadingService(EmailRepository emailRepository,
+            @Value("${threading.cache.size:100000}") int cacheSize,
+            @Value("${threading.subject.window.hours:72}") long subjectWindowHours) {
+        this.emailRepository = emailRepository;
+        this.threadsByMessageId = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.threadsBySubject = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofHours(subjectWindowHours))
+                .build();
+    }
+
+    /** The first message id in a Message-ID header, without angle brackets. */
+    public static String messageId(String header) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = MESSAGE_ID.matcher(header);
+        return matcher.find() ? truncate(matcher.group(1)) : null;
+    }
+
+    /** Message ids an email replies to, nearest first: In-Reply-To, then References from the end. */
+    public static List<String> parents(String inReplyTo, String references) {
+        Set<String> parents = new LinkedHashSet<>();
+        String parent = messageId(inReplyTo);
+        if (parent != null) {
+            parents.add(parent);
+        }
+        if (references != null) {
+            List<String> referenced = new ArrayList<>();
+            Matcher matcher = MESSAGE_ID.matcher(references);
+            while (matcher.find()) {
+                referenced.add(truncate(matcher.group(1)));
+            }
+            for (int i = referenced.size() - 1; i >= 0 && parents.size() < MAX_REFERENCES; i--) {
+                parents.add(referenced.get(i));
+            }
+        }
+        return new ArrayList<>(parents);
+    }
+
+    /** Subject with reply and forward prefixes and list tags removed, lower-cased. */
+    public static String normalizeSubject(String subject) {
+        if (subject == null) {
+            return "";
+        }
+        return REPLY_PREFIX.matcher(subject).replaceFirst("").trim().replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Sets the thread of an email about to be stored, if it belongs to a
+     * known conversation. Emails left without a thread start their own.
+     */
+    public void assign(Email email, List<String> parents) {
+        List<String> candidates = new ArrayList<>(parents);
+        if (email.getMessageId() != null && !candidates.contains(email.getMessageId())) {
+            candidates.add(email.getMessageId());
+        }
+        Long threadId = lookup(email, candidates);
+        if (threadId == null && (!parents.isEmpty() || isReply(email.getSubject()))) {
+            String subject = normalizeSubject(email.getSubject());
+            threadId = subject.isEmpty() ? null : threadsBySubject.getIfPresent(key(email, subject));
+        }
+        email.setThreadId(threadId);
+    }
+
+    /** Remembers a stored email, and the messages it references, as members of its thread. */
+    public void remember(Email email, List<String> parents) {
+        Long threadId = email.getThreadId();
+        if (threadId == null) {
+            return;
+        }
+        if (email.getMessageId() != null) {
+            threadsByMessageId.put(key(email, email.getMessageId()), threadId);
+        }
+        for (String parent : parents) {
+            threadsByMessageId.asMap().putIfAbsent(key(email, parent), threadId);
+        }
+        String subject = normalizeSubject(email.getSubject());
+        if (!subject.isEmpty()) {
+            threadsBySubject.put(key(email, subject), threadId);
+        }
+    }
+
+    private Long lookup(Email email, List<String> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Map<String, Long> known = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String candidate : candidates) {
+            Long threadId = threadsByMessageId.getIfPresent(key(email, candidate));
+            if (threadId != null) {
+                known.put(candidate, threadId);
+            } else {
+                missing.add(candidate);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<EmailRepository.ThreadRef> refs = email.getUser() != null
+                    ? emailRepository.findThreadRefs(email.getUser().getId(), missing)
+                    : emailRepository.findUnownedThreadRefs(email.getRecipient(), missing);
+            for (EmailRepository.ThreadRef ref : refs) {
+                known.putIfAbsent(ref.getMessageId(), ref.getThreadId());
+            }
+        }
+        for (String candidate : candidates) {
+            Long threadId = known.get(candidate);
+            if (threadId != null) {
+                return threadId;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isReply(String subject) {
+        return subject != null && REPLY_PREFIX.matcher(subject).lookingAt();
+    }
+
+    /** Cache key of a Message-ID or normalized subject within the email's mailbox. */
+    private static String key(Email email, String value) {
+        String mailbox = email.getUser() != null ? "user:" + email.getUser().getId() : email.getRecipient();
+        return mailbox + "\n" + value;
+    }
+
+    private static String truncate(String messageId) {
+        return messageId.length() > Email.MESSAGE_ID_LENGTH ? messageId.substring(0, Email.MESSAGE_ID_LENGTH)
+                : messageId;
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.smtp.util;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.subethamail.smtp.RejectException;
 
 import java.net.InetAddress;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.Iterator;
 import java.util.Queue;
@@ -16,7 +18,12 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class RateLimiter {
 
     private final ConcurrentHashMap<String, Queue<Instant>> connectionsPerIp = new ConcurrentHashMap<>();
-    private static final int MAX_CONNECTIONS_PER_MINUTE = 20;
+
+    @Value("${smtp.rate.limit.per.minute:20}")
+    private int maxConnectionsPerMinute;
+
+    // Replaced by the benchmarks to model a connection rate
+    private Clock clock = Clock.systemUTC();
 
     public void onConnect(InetAddress clientAddress) throws RejectException {
         if (clientAddress == null)
@@ -25,7 +32,7 @@ public class RateLimiter {
         String ip = clientAddress.getHostAddress();
         Queue<Instant> timestamps = connectionsPerIp.computeIfAbsent(ip, k -> new ConcurrentLinkedQueue<>());
 
-        Instant now = Instant.now();
+        Instant now = clock.instant();
         timestamps.add(now);
 
         // Remove old timestamps
@@ -41,7 +48,7 @@ public class RateLimiter {
 
         log.info("Checking rate limit for IP: {}. Current count: {}", ip, timestamps.size());
 
-        if (timestamps.size() > MAX_CONNECTIONS_PER_MINUTE) {
+        if (timestamps.size() > maxConnectionsPerMinute) {
             log.warn("Rate limit exceeded for IP: {} ({} connections/min)", ip, timestamps.size());
             throw new RejectException(421, "Too many connections from your IP. Please try again later.");
         }
@@ -0,0 +1,173 @@
+package com.example.smtp.worker;
+
+import com.example.common.codec.CompressionDictionaries;
+import com.example.common.codec.PayloadCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Brings stored queue payloads to the codec's current format in the
+ * background: values written before compression, or with an older
+ * dictionary, are rewritten a batch at a time.
+ *
+ * Until a dictionary exists, one is trained from the most recent payloads
+ * once enough have been stored; every instance adopts it on its next
+ * dictionary refresh. On PostgreSQL an advisory lock lets only one instance
+ * train at a time, and it trains only if no dictionary was stored meanwhile.
+ * Samples are payloads of at most {@code codec.dictionary.sample.max.bytes}
+ * as stored, read through a cursor, so training never holds more than the
+ * sample prefixes in memory. A pass walks the table by primary key reading only
+ * the format header of each row, and starts over whenever the current
+ * dictionary changes.
+ */
+@Component
+@Slf4j
+public class PayloadRecompressor {
+
+    private static final int SAMPLE_PREFIX_BYTES = 16 * 1024;
+    private static final int SAMPLE_FETCH_SIZE = 100;
+    // Any constant shared by all instances; advisory lock keys are global to the database
+    private static final long TRAINING_LOCK = 0x6469637454524e4cL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PayloadCodec codec;
+    private final CompressionDictionaries dictionaries;
+
+    @Value("${codec.recompress.batch.size:500}")
+    private int batchSize;
+
+    @Value("${codec.dictionary.min.samples:1000}")
+    private int minSamples;
+
+    @Value("${codec.dictionary.samples:5000}")
+    private int samples;
+
+    @Value("${codec.dictionary.size:65536}")
+    private int dictionarySize;
+
+    @Value("${codec.dictionary.sample.max.bytes:262144}")
+    private int sampleMaxBytes;
+
+    // Written only by the scheduler thread
+    private long lastId;
+    private Integer passDictionaryId;
+    private Boolean postgres;
+
+    public PayloadRecompressor(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, PayloadCodec codec,
+            CompressionDictionaries dictionaries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.codec = codec;
+        this.dictionaries = dictionaries;
+    }
+
+    @Scheduled(fixedDelayString = "${codec.recompress.interval.ms:10000}")
+    public void run() {
+        try {
+            if (codec.currentDictionaryId() == null) {
+                trainDictionary();
+            }
+            recompressBatch();
+        } catch (RuntimeException e) {
+            log.warn("Payload recompression failed: {}", e.getMessage());
+        }
+    }
+
+    void trainDictionary() {
+        // Stops at the first row past the minimum instead of counting the table
+        boolean enough = !jdbcTemplate.queryForList("SELECT 1 FROM outbound_queue LIMIT 1 OFFSET ?", Integer.class,
+                Math.max(minSamples - 1, 0)).isEmpty();
+        if (!enough) {
+            return;
+        }
+        // In a transaction, which holds the lock and lets PostgreSQL stream the samples through a cursor
+        transactionTemplate.executeWithoutResult(status -> {
+            if (isPostgres() && !Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, TRAINING_LOCK))) {
+                return;
+            }
+            if (jdbcTemplate.queryForObject("SELECT MAX(id) FROM compression_dictionaries", Integer.class) != null) {
+                // Trained by another instance; adopted on the next refresh
+                return;
+            }
+            List<byte[]> sample = new ArrayList<>();
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("SELECT email_data FROM outbound_queue "
+                        + "WHERE octet_length(email_data) <= ? ORDER BY id DESC LIMIT ?");
+                statement.setInt(1, sampleMaxBytes);
+                statement.setInt(2, samples);
+                statement.setFetchSize(SAMPLE_FETCH_SIZE);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                byte[] raw = codec.decode(rs.getBytes(1));
+                sample.add(raw.length > SAMPLE_PREFIX_BYTES ? Arrays.copyOf(raw, SAMPLE_PREFIX_BYTES) : raw);
+            });
+            if (sample.size() < minSamples) {
+                return;
+            }
+            byte[] dictionary = PayloadCodec.train(sample, dictionarySize);
+            int id = dictionaries.add(dictionary).getId();
+            log.info("Trained compression dictionary {} ({} bytes) from {} payloads", id, dictionary.length,
+                    sample.size());
+        });
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> connection.getMetaData()
+                    .getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres"));
+        }
+        return postgres;
+    }
+
+    /** Rewrites the non-current rows among the next batch of ids; returns how many were rewritten. */
+    int recompressBatch() {
+        Integer dictionaryId = codec.currentDictionaryId();
+        if (!Objects.equals(dictionaryId, passDictionaryId)) {
+            passDictionaryId = dictionaryId;
+            lastId = 0;
+        }
+        List<Map<String, Object>> headers = jdbcTemplate.queryForList(
+                "SELECT id, SUBSTRING(email_data FROM 1 FOR " + PayloadCodec.HEADER_LENGTH + ") AS header"
+                        + " FROM outbound_queue WHERE id > ? ORDER BY id LIMIT ?", lastId, batchSize);
+        if (headers.isEmpty()) {
+            return 0;
+        }
+        List<Long> stale = new ArrayList<>();
+        for (Map<String, Object> row : headers) {
+            byte[] header = (byte[]) row.get("header");
+            if (header != null && !codec.isCurrent(header)) {
+                stale.add(((Number) row.get("id")).longValue());
+            }
+        }
+        lastId = ((Number) headers.get(headers.size() - 1).get("id")).longValue();
+        if (stale.isEmpty()) {
+            return 0;
+        }
+
+        String in = String.join(",", Collections.nCopies(stale.size(), "?"));
+        List<Object[]> updates = jdbcTemplate.query(
+                "SELECT id, email_data FROM outbound_queue WHERE id IN (" + in + ")",
+                (rs, i) -> new Object[]{codec.encode(codec.decode(rs.getBytes(2))), rs.getLong(1)},
+                stale.toArray());
+        jdbcTemplate.batchUpdate("UPDATE outbound_queue SET email_data = ? WHERE id = ?", updates);
+        log.debug("Recompressed {} payloads up to id {}", updates.size(), lastId);
+        return updates.size();
+    }
+}
@@ -5,6 +5,7 @@ import com.example.common.repository.MailQueueRepository;
 import com.example.smtp.service.DeliveryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -38,10 +39,15 @@ public class QueueWorker {
         if (!pendingItems.isEmpty()) {
             log.info("Found {} items to process", pendingItems.size());
             for (OutboundQueue item : pendingItems) {
+                if (item.getCorrelationId() != null) {
+                    MDC.put("correlationId", item.getCorrelationId());
+                }
                 try {
                     deliveryService.processItem(item);
                 } catch (Exception e) {
                     log.error("Error processing item ID: {}", item.getId(), e);
+                } finally {
+                    MDC.remove("correlationId");
                 }
             }
         }
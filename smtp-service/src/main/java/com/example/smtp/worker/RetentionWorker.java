@@ -0,0 +1,185 @@
+package com.example.smtp.worker;
+
+import com.example.common.retention.MailboxPurger;
+import com.example.common.retention.RetentionPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes what is past its retention: emails in folders with a retention
+ * policy, and queue rows whose last delivery attempt was long enough ago,
+ * separately for sent and failed rows.
+ *
+ * Every policy walks the folders of its name by primary key and empties each
+ * of emails filed there before its cutoff through the {@link MailboxPurger},
+ * so an old email moved to Trash is kept for the whole period. A mailbox's
+ * domain is the user's {@code domain_id} when set, otherwise the part of the
+ * username after the {@code @}. The general policy for a folder name skips
+ * the mailboxes of domains with a policy of their own. Queue rows are deleted in chunks along the status
+ * index, one statement per chunk, with the same pause between chunks.
+ *
+ * Deleted rows are counted per policy; a run's duration and the time the
+ * last run finished are published too.
+ */
+@Component
+@Slf4j
+public class RetentionWorker {
+
+    private static final int FOLDER_PAGE_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final MailboxPurger mailboxPurger;
+    private final MeterRegistry meterRegistry;
+    private final List<RetentionPolicy> policies;
+    private final Timer runs;
+    private final AtomicLong lastCompleted = new AtomicLong();
+
+    @Value("${retention.queue.sent.days:7}")
+    private int sentDays;
+
+    @Value("${retention.queue.failed.days:30}")
+    private int failedDays;
+
+    @Value("${retention.chunk.size:1000}")
+    private int chunkSize;
+
+    @Value("${retention.chunk.pause.ms:200}")
+    private long pauseMs;
+
+    public RetentionWorker(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            MailboxPurger mailboxPurger, MeterRegistry meterRegistry,
+            @Value("${retention.mailbox.policies:Trash=30}") String policies) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.mailboxPurger = mailboxPurger;
+        this.meterRegistry = meterRegistry;
+        this.policies = RetentionPolicy.parse(policies);
+        this.runs = meterRegistry.timer("retention.runs");
+        meterRegistry.gauge("retention.last.completed", lastCompleted, AtomicLong::doubleValue);
+    }
+
+    @Scheduled(fixedDelayString = "${retention.interval.ms:3600000}",
+            initialDelayString = "${retention.initial.delay.ms:60000}")
+    public void run() {
+        runs.record(() -> {
+            for (RetentionPolicy policy : policies) {
+                try {
+                    purgeMailboxes(policy);
+                } catch (RuntimeException e) {
+                    log.warn("Retention of {} failed: {}", policy.getName(), e.getMessage());
+                }
+            }
+            try {
+                purgeQueue("SENT", sentDays);
+                purgeQueue("FAILED", failedDays);
+            } catch (RuntimeException e) {
+                log.warn("Queue retention failed: {}", e.getMessage());
+            }
+        });
+        lastCompleted.set(System.currentTimeMillis() / 1000);
+    }
+
+    /** Returns the number of emails deleted. */
+    long purgeMailboxes(RetentionPolicy policy) {
+        if (policy.getDays() == 0) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(policy.getDays());
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("folder", policy.getFolder().toLowerCase(Locale.ROOT))
+                .addValue("limit", FOLDER_PAGE_SIZE);
+        StringBuilder select = new StringBuilder("SELECT f.id, f.user_id FROM folders f "
+                + "JOIN users u ON u.id = f.user_id LEFT JOIN domains d ON d.id = u.domain_id "
+                + "WHERE LOWER(f.name) = :folder AND f.id > :after");
+        if (policy.getDomain() != null) {
+            select.append(" AND ").append(inDomain(params, "domain", policy.getDomain()));
+        } else {
+            int i = 0;
+            for (RetentionPolicy other : policies) {
+                if (other.getDomain() != null && other.getFolder().equalsIgnoreCase(policy.getFolder())) {
+                    select.append(" AND NOT ").append(inDomain(params, "excluded" + i++, other.getDomain()));
+                }
+            }
+        }
+        select.append(" ORDER BY f.id LIMIT :limit");
+
+        Counter deleted = meterRegistry.counter("retention.deleted", "policy", policy.getName());
+        long total = 0;
+        long after = 0;
+        List<long[]> folders;
+        do {
+            params.addValue("after", after);
+            folders = namedParameterJdbcTemplate.query(select.toString(), params,
+                    (rs, i) -> new long[] { rs.getLong(1), rs.getLong(2) });
+            for (long[] folder : folders) {
+                total += mailboxPurger.purgeFolder(folder[1], folder[0], cutoff, deleted::increment);
+                if (Thread.currentThread().isInterrupted()) {
+                    return total;
+                }
+                after = folder[0];
+            }
+        } while (folders.size() == FOLDER_PAGE_SIZE);
+        if (total > 0) {
+            log.info("Retention {} deleted {} emails filed before {}", policy.getName(), total, cutoff);
+        }
+        return total;
+    }
+
+    /** Returns the number of queue rows deleted. */
+    long purgeQueue(String status, int days) {
+        if (days == 0) {
+            return 0;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(days));
+        Counter deleted = meterRegistry.counter("retention.deleted", "policy",
+                "queue-" + status.toLowerCase(Locale.ROOT));
+        long total = 0;
+        int chunk;
+        do {
+            // Conditions repeated outside the subquery, so a row retried meanwhile is kept
+            chunk = jdbcTemplate.update("DELETE FROM outbound_queue WHERE status = ? AND next_retry_at < ? AND id IN "
+                    + "(SELECT id FROM outbound_queue WHERE status = ? AND next_retry_at < ? ORDER BY next_retry_at "
+                    + "LIMIT ?)", status, cutoff, status, cutoff, chunkSize);
+            total += chunk;
+            deleted.increment(chunk);
+        } while (chunk == chunkSize && pause());
+        if (total > 0) {
+            log.info("Retention deleted {} {} queue rows last attempted before {}", total, status, cutoff);
+        }
+        return total;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Condition matching the users of the domain, binding its parameters under the given name. */
+    private static String inDomain(MapSqlParameterSource params, String name, String domain) {
+        params.addValue(name, domain);
+        params.addValue(name + "Pattern",
+                "%@" + domain.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_"));
+        return "(d.id IS NOT NULL AND LOWER(d.name) = :" + name + " OR d.id IS NULL AND LOWER(u.username) LIKE :"
+                + name + "Pattern ESCAPE '\\')";
+    }
+}
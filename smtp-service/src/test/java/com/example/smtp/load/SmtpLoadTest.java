@@ -0,0 +1,258 @@
+package com.example.smtp.load;
+
+import com.example.common.entity.User;
+import com.example.common.repository.UserRepository;
+import jakarta.mail.Message;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Drives concurrent SMTP clients against the inbound and submission servers
+ * and measures how fast messages are accepted and how long they take to reach
+ * the relay host, which is a local {@link SmtpSink}.
+ *
+ * Runs only with the {@code load} Maven profile. Sizing is controlled with
+ * system properties: {@code load.clients}, {@code load.messages} (per client),
+ * {@code load.size} (bytes) and {@code load.delivery.timeout} (seconds).
+ */
+@SpringBootTest
+@ActiveProfiles("load")
+@Tag("load")
+public class SmtpLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 8);
+    private static final int MESSAGES_PER_CLIENT = Integer.getInteger("load.messages", 50);
+    private static final int MESSAGE_SIZE = Integer.getInteger("load.size", 4096);
+    private static final long DELIVERY_TIMEOUT_SECONDS = Long.getLong("load.delivery.timeout", 120);
+
+    private static final String DOMAIN = "devprabhakar.in";
+    private static final String USERNAME = "loadtest";
+    private static final String PASSWORD = "loadtest-password";
+
+    private static final int INBOUND_PORT = freePort();
+    private static final int SUBMISSION_PORT = freePort();
+    private static final int SINK_PORT = freePort();
+
+    private static SmtpSink sink;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    enum Scenario {
+        INBOUND(false, false),
+        INBOUND_STARTTLS(false, true),
+        SUBMISSION_AUTH(true, false),
+        SUBMISSION_AUTH_STARTTLS(true, true);
+
+        private final boolean auth;
+        private final boolean startTls;
+
+        Scenario(boolean auth, boolean startTls) {
+            this.auth = auth;
+            this.startTls = startTls;
+        }
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("smtp.port", () -> INBOUND_PORT);
+        registry.add("smtp.submission.port", () -> SUBMISSION_PORT);
+        registry.add("smtp.rate.limit.per.minute", () -> Integer.MAX_VALUE);
+        registry.add("relay.host", () -> "localhost");
+        registry.add("relay.port", () -> SINK_PORT);
+        // Signing checks the selector in DNS; DkimSigningBenchmark covers its cost offline
+        registry.add("dkim.enabled", () -> false);
+        registry.add("queue.worker.fixed.delay", () -> 50);
+        registry.add("queue.worker.batch.size", () -> 200);
+        registry.add("logging.level.com.example.smtp", () -> "WARN");
+    }
+
+    @BeforeAll
+    static void startSink() throws Exception {
+        // STARTTLS on the servers uses the JVM default key store
+        System.setProperty("javax.net.ssl.keyStore",
+                Path.of(SmtpLoadTest.class.getResource("/keystore.jks").toURI()).toString());
+        System.setProperty("javax.net.ssl.keyStorePassword", "password");
+
+        sink = new SmtpSink(SINK_PORT);
+        sink.start();
+    }
+
+    @AfterAll
+    static void stopSink() {
+        sink.stop();
+    }
+
+    @BeforeEach
+    void createUser() {
+        if (userRepository.findByUsername(USERNAME).isEmpty()) {
+            userRepository.save(User.builder()
+                    .username(USERNAME)
+                    .password(new BCryptPasswordEncoder().encode(PASSWORD))
+                    .build());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Scenario.class)
+    void load(Scenario scenario) throws Exception {
+        Map<String, Long> accepted = new ConcurrentHashMap<>();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<long[]>> results = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int client = 0; client < CLIENTS; client++) {
+            int clientId = client;
+            results.add(clients.submit(() -> runClient(scenario, clientId, accepted)));
+        }
+        long[] acceptLatencies = new long[CLIENTS * MESSAGES_PER_CLIENT];
+        int position = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, acceptLatencies, position, latencies.length);
+            position += latencies.length;
+        }
+        long acceptElapsed = System.nanoTime() - start;
+        clients.shutdown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DELIVERY_TIMEOUT_SECONDS);
+        while (delivered(accepted) < accepted.size() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        long deliveryElapsed = System.nanoTime() - start;
+
+        long[] deliveryLatencies = accepted.entrySet().stream()
+                .filter(entry -> sink.arrival(entry.getKey()) != null)
+                .mapToLong(entry -> sink.arrival(entry.getKey()) - entry.getValue())
+                .toArray();
+
+        report(scenario, acceptLatencies, acceptElapsed, deliveryLatencies, deliveryElapsed);
+        assertEquals(accepted.size(), deliveryLatencies.length, "messages delivered to the sink");
+    }
+
+    private long[] runClient(Scenario scenario, int clientId, Map<String, Long> accepted) throws Exception {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", String.valueOf(scenario.auth ? SUBMISSION_PORT : INBOUND_PORT));
+        props.put("mail.smtp.auth", String.valueOf(scenario.auth));
+        props.put("mail.smtp.starttls.enable", String.valueOf(scenario.startTls));
+        props.put("mail.smtp.starttls.required", String.valueOf(scenario.startTls));
+        props.put("mail.smtp.ssl.trust", "*");
+        Session session = Session.getInstance(props);
+
+        long[] latencies = new long[MESSAGES_PER_CLIENT];
+        try (Transport transport = session.getTransport("smtp")) {
+            if (scenario.auth) {
+                transport.connect(USERNAME, PASSWORD);
+            } else {
+                transport.connect();
+            }
+            for (int i = 0; i < MESSAGES_PER_CLIENT; i++) {
+                String id = scenario.name().toLowerCase() + "-" + clientId + "-" + i;
+                MimeMessage message = message(session, id);
+                long sent = System.nanoTime();
+                transport.sendMessage(message, message.getAllRecipients());
+                long done = System.nanoTime();
+                latencies[i] = done - sent;
+                accepted.put(id, done);
+            }
+        }
+        return latencies;
+    }
+
+    private static MimeMessage message(Session session, String id) throws Exception {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(USERNAME + "@" + DOMAIN));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("recipient@example.net"));
+        message.setSubject("Load test " + id);
+        message.setHeader(SmtpSink.ID_HEADER, id);
+        message.setText(body(MESSAGE_SIZE));
+        return message;
+    }
+
+    private static String body(int size) {
+        StringBuilder body = new StringBuilder(size);
+        while (body.length() < size) {
+            body.append("The quick brown fox jumps over the lazy dog. ");
+        }
+        return body.substring(0, size);
+    }
+
+    private static int delivered(Map<String, Long> accepted) {
+        int delivered = 0;
+        for (String id : accepted.keySet()) {
+            if (sink.arrival(id) != null) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    private static void report(Scenario scenario, long[] accept, long acceptElapsed, long[] delivery,
+            long deliveryElapsed) {
+        Arrays.sort(accept);
+        Arrays.sort(delivery);
+        System.out.printf("%n== %s: %d clients x %d messages of %d bytes ==%n", scenario, CLIENTS,
+                MESSAGES_PER_CLIENT, MESSAGE_SIZE);
+        System.out.printf("accepted  %6d msgs  %8.1f msg/s  p50 %8.2f ms  p99 %8.2f ms%n", accept.length,
+                perSecond(accept.length, acceptElapsed), millis(percentile(accept, 0.50)),
+                millis(percentile(accept, 0.99)));
+        System.out.printf("delivered %6d msgs  %8.1f msg/s  p50 %8.2f ms  p99 %8.2f ms (accept to delivery)%n",
+                delivery.length, perSecond(delivery.length, deliveryElapsed), millis(percentile(delivery, 0.50)),
+                millis(percentile(delivery, 0.99)));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double perSecond(int count, long nanos) {
+        return count * 1_000_000_000d / nanos;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
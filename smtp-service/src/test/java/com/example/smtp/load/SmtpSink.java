@@ -0,0 +1,73 @@
+package com.example.smtp.load;
+
+import org.subethamail.smtp.MessageHandler;
+import org.subethamail.smtp.server.SMTPServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local SMTP server standing in for the relay host. It accepts everything and
+ * records when each message, identified by its {@value #ID_HEADER} header,
+ * arrived.
+ */
+class SmtpSink {
+
+    static final String ID_HEADER = "X-Load-Id";
+
+    private final Map<String, Long> arrivals = new ConcurrentHashMap<>();
+    private final SMTPServer server;
+
+    SmtpSink(int port) {
+        server = SMTPServer.port(port)
+                .messageHandlerFactory(context -> new MessageHandler() {
+                    @Override
+                    public void from(String from) {
+                    }
+
+                    @Override
+                    public void recipient(String recipient) {
+                    }
+
+                    @Override
+                    public String data(InputStream data) throws IOException {
+                        String id = loadId(data.readAllBytes());
+                        if (id != null) {
+                            arrivals.putIfAbsent(id, System.nanoTime());
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public void done() {
+                    }
+                })
+                .build();
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop();
+    }
+
+    Long arrival(String id) {
+        return arrivals.get(id);
+    }
+
+    private static String loadId(byte[] message) {
+        String text = new String(message, StandardCharsets.ISO_8859_1);
+        int start = text.indexOf(ID_HEADER + ": ");
+        if (start < 0) {
+            return null;
+        }
+        start += ID_HEADER.length() + 2;
+        int end = text.indexOf('\r', start);
+        return text.substring(start, end < 0 ? text.length() : end).trim();
+    }
+}
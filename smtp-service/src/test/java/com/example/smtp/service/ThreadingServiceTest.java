@@ -0,0 +1,146 @@
+package com.example.smtp.service;
+
+import com.example.common.entity.Email;
+import com.example.common.entity.User;
+import com.example.common.repository.EmailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ThreadingServiceTest {
+
+    private static final User ALICE = User.builder().id(1L).username("alice").build();
+    private static final User BOB = User.builder().id(2L).username("bob").build();
+
+    private EmailRepository emailRepository;
+    private ThreadingService threadingService;
+    private long nextId = 100;
+
+    @BeforeEach
+    void setUp() {
+        emailRepository = mock(EmailRepository.class);
+        threadingService = new ThreadingService(emailRepository, 1000, 72);
+    }
+
+    @Test
+    void parsesMessageIdsNearestFirst() {
+        assertEquals("a@x", ThreadingService.messageId(" <a@x> <b@x>"));
+        assertNull(ThreadingService.messageId("no brackets"));
+        assertEquals(List.of("p@x", "r3@x", "r2@x", "r1@x"),
+                ThreadingService.parents("<p@x>", "<r1@x> <r2@x>\r\n <r3@x> <p@x>"));
+        assertEquals(List.of(), ThreadingService.parents(null, null));
+    }
+
+    @Test
+    void normalizesReplyPrefixesAndListTags() {
+        assertEquals("quarterly report", ThreadingService.normalizeSubject("Re: Fwd:  Quarterly   Report"));
+        assertEquals("quarterly report", ThreadingService.normalizeSubject("[team] RE[2]: AW: Quarterly Report"));
+        assertEquals("", ThreadingService.normalizeSubject(null));
+    }
+
+    @Test
+    void replyJoinsItsParentsThread() {
+        Email parent = store(ALICE, "p@x", "Plans", List.of());
+        Email reply = store(ALICE, "c@x", "Re: Plans", ThreadingService.parents("<p@x>", null));
+        Email later = store(ALICE, "d@x", "Re: Plans", ThreadingService.parents(null, "<p@x> <c@x>"));
+
+        assertEquals(parent.getId(), parent.getThreadId());
+        assertEquals(parent.getThreadId(), reply.getThreadId());
+        assertEquals(parent.getThreadId(), later.getThreadId());
+    }
+
+    @Test
+    void parentDeliveredAfterItsReplyJoinsTheReplysThread() {
+        Email reply = store(ALICE, "c@x", "Re: Plans", ThreadingService.parents("<p@x>", null));
+        Email parent = store(ALICE, "p@x", "Plans", List.of());
+
+        assertEquals(reply.getThreadId(), parent.getThreadId());
+    }
+
+    @Test
+    void replyWithoutKnownReferencesJoinsBySubjectWithinTheMailbox() {
+        Email original = store(ALICE, "p@x", "Plans", List.of());
+        Email reply = store(ALICE, "c@x", "RE: plans", ThreadingService.parents("<unknown@x>", null));
+        Email other = store(BOB, "e@x", "Re: Plans", List.of());
+        Email notReply = store(ALICE, "f@x", "Plans", List.of());
+
+        assertEquals(original.getThreadId(), reply.getThreadId());
+        assertEquals(other.getId(), other.getThreadId());
+        assertEquals(notReply.getId(), notReply.getThreadId());
+    }
+
+    @Test
+    void messageIdsOfAnotherMailboxAreNotMatched() {
+        Email aliceEmail = store(ALICE, "p@x", "Plans", List.of());
+        Email bobReply = store(BOB, "c@x", "Plans", ThreadingService.parents("<p@x>", null));
+
+        assertEquals(aliceEmail.getId(), aliceEmail.getThreadId());
+        assertEquals(bobReply.getId(), bobReply.getThreadId());
+    }
+
+    @Test
+    void unknownParentsAreLookedUpInTheOwnersEmails() {
+        when(emailRepository.findThreadRefs(eq(ALICE.getId()), anyCollection()))
+                .thenReturn(List.of(ref("old@x", 42L)));
+
+        Email reply = store(ALICE, "c@x", "Re: Plans", ThreadingService.parents("<old@x>", null));
+        // Now remembered, so the next reply only looks up its own Message-ID
+        Email second = store(ALICE, "d@x", "Re: Plans", ThreadingService.parents("<old@x>", null));
+
+        assertEquals(42L, reply.getThreadId());
+        assertEquals(42L, second.getThreadId());
+        verify(emailRepository).findThreadRefs(eq(ALICE.getId()), eq(List.of("old@x", "c@x")));
+        verify(emailRepository).findThreadRefs(eq(ALICE.getId()), eq(List.of("d@x")));
+        verify(emailRepository, never()).findThreadRefs(eq(BOB.getId()), anyCollection());
+    }
+
+    @Test
+    void emailsWithoutOwnerAreScopedByRecipient() {
+        when(emailRepository.findUnownedThreadRefs(eq("carol@example.org"), anyCollection()))
+                .thenReturn(List.of(ref("old@x", 7L)));
+
+        Email reply = Email.builder().recipient("carol@example.org").messageId("c@x").subject("Re: Plans").build();
+        threadingService.assign(reply, List.of("old@x"));
+
+        assertEquals(7L, reply.getThreadId());
+        verify(emailRepository, never()).findThreadRefs(anyLong(), anyCollection());
+    }
+
+    /** Assigns and remembers as ingest does, starting a thread when none is found. */
+    private Email store(User user, String messageId, String subject, List<String> parents) {
+        Email email = Email.builder().user(user).recipient(user.getUsername()).messageId(messageId).subject(subject)
+                .build();
+        threadingService.assign(email, parents);
+        email.setId(nextId++);
+        if (email.getThreadId() == null) {
+            email.setThreadId(email.getId());
+        }
+        threadingService.remember(email, parents);
+        return email;
+    }
+
+    private static EmailRepository.ThreadRef ref(String messageId, Long threadId) {
+        return new EmailRepository.ThreadRef() {
+            @Override
+            public String getMessageId() {
+                return messageId;
+            }
+
+            @Override
+            public Long getThreadId() {
+                return threadId;
+            }
+        };
+    }
+}